@@ -1,17 +1,33 @@
 package com.example.sitecloner;
 
+import com.example.sitecloner.config.FetchProperties;
 import com.example.sitecloner.config.StorageProperties;
+import com.example.sitecloner.config.TaskQueueProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
 
 @SpringBootApplication
-@EnableConfigurationProperties(StorageProperties.class)
+@EnableConfigurationProperties({StorageProperties.class, FetchProperties.class, TaskQueueProperties.class})
 public class SiteClonerApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(SiteClonerApplication.class, args);
+		SpringApplication app = new SpringApplication(SiteClonerApplication.class);
+		app.addListeners(new ApplicationListener<ApplicationEnvironmentPreparedEvent>() {
+			public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+				// keep-alive 池大小在 JDK 首次建立连接时读取，且是整个 JVM 共用的设置：在容器创建任何 Bean 之前按配置设置一次，
+				// 启动参数里已用 -D 指定的不覆盖
+				int maxIdle = event.getEnvironment().getProperty("sitecloner.fetch.max-idle-connections-per-host", Integer.class, 16);
+				setDefault("http.keepAlive", "true");
+				setDefault("http.maxConnections", String.valueOf(Math.max(1, maxIdle)));
+			}
+		});
+		app.run(args);
 	}
-}
-
 
+	private static void setDefault(String key, String value) {
+		if (System.getProperty(key) == null) System.setProperty(key, value);
+	}
+}
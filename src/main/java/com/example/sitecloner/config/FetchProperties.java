@@ -0,0 +1,189 @@
+package com.example.sitecloner.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "sitecloner.fetch")
+public class FetchProperties {
+
+	// 所有请求统一使用的 User-Agent
+	private String userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36";
+
+	// 页面请求超时（毫秒）
+	private int pageTimeoutMillis = 20000;
+
+	// 资产请求超时（毫秒）
+	private int assetTimeoutMillis = 30000;
+
+	// 每个主机保留的空闲 keep-alive 连接数（对应 JDK 的 http.maxConnections，由 SiteClonerApplication 启动时设置）
+	private int maxIdleConnectionsPerHost = 16;
+
+	// 单个资产的最大字节数，超过即放弃下载；0 表示不限制
+	private long maxAssetBytes = 512L * 1024 * 1024;
+
+	// 单个 HTML 页面解析前的最大字节数，超过即中止；0 表示不限制
+	private long maxPageBytes = 16L * 1024 * 1024;
+
+	// 每主机限流（所有任务共享）：并发上限、初始并发与每秒请求数上限（0 表示不限速率）
+	private int hostMaxConcurrency = 8;
+
+	private int hostInitialConcurrency = 2;
+
+	private double hostMaxRequestsPerSecond = 10;
+
+	// 首字节延迟的滑动均值超过基线的倍数（且高于下限毫秒数）时视为拥塞并减半
+	private double latencyBackoffFactor = 3.0;
+
+	private long latencyFloorMillis = 500;
+
+	// Retry-After 最多遵守的秒数
+	private int maxRetryAfterSeconds = 120;
+
+	// 收到 429/503 后的最多重试次数
+	private int throttleRetries = 3;
+
+	// 熔断：连续连接失败次数达到阈值后熔断该主机（0 表示关闭），熔断持续秒数后放行探测请求
+	private int breakerFailureThreshold = 5;
+
+	private int breakerOpenSeconds = 30;
+
+	// 所有任务合计同时在途的请求数上限（0 表示不限制），与每主机并发上限一起约束连接数
+	private int maxTotalConnections = 512;
+
+	// 采集线程使用虚拟线程（需 JDK 21 及以上，低版本自动退回平台线程）；开启后任务数默认放宽，在途请求数由上面的上限约束
+	private boolean virtualThreads = false;
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	public void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	public int getPageTimeoutMillis() {
+		return pageTimeoutMillis;
+	}
+
+	public void setPageTimeoutMillis(int pageTimeoutMillis) {
+		this.pageTimeoutMillis = pageTimeoutMillis;
+	}
+
+	public int getAssetTimeoutMillis() {
+		return assetTimeoutMillis;
+	}
+
+	public void setAssetTimeoutMillis(int assetTimeoutMillis) {
+		this.assetTimeoutMillis = assetTimeoutMillis;
+	}
+
+	public long getMaxAssetBytes() {
+		return maxAssetBytes;
+	}
+
+	public void setMaxAssetBytes(long maxAssetBytes) {
+		this.maxAssetBytes = maxAssetBytes;
+	}
+
+	public int getHostMaxConcurrency() {
+		return hostMaxConcurrency;
+	}
+
+	public void setHostMaxConcurrency(int hostMaxConcurrency) {
+		this.hostMaxConcurrency = hostMaxConcurrency;
+	}
+
+	public int getHostInitialConcurrency() {
+		return hostInitialConcurrency;
+	}
+
+	public void setHostInitialConcurrency(int hostInitialConcurrency) {
+		this.hostInitialConcurrency = hostInitialConcurrency;
+	}
+
+	public double getHostMaxRequestsPerSecond() {
+		return hostMaxRequestsPerSecond;
+	}
+
+	public void setHostMaxRequestsPerSecond(double hostMaxRequestsPerSecond) {
+		this.hostMaxRequestsPerSecond = hostMaxRequestsPerSecond;
+	}
+
+	public double getLatencyBackoffFactor() {
+		return latencyBackoffFactor;
+	}
+
+	public void setLatencyBackoffFactor(double latencyBackoffFactor) {
+		this.latencyBackoffFactor = latencyBackoffFactor;
+	}
+
+	public long getLatencyFloorMillis() {
+		return latencyFloorMillis;
+	}
+
+	public void setLatencyFloorMillis(long latencyFloorMillis) {
+		this.latencyFloorMillis = latencyFloorMillis;
+	}
+
+	public int getMaxRetryAfterSeconds() {
+		return maxRetryAfterSeconds;
+	}
+
+	public void setMaxRetryAfterSeconds(int maxRetryAfterSeconds) {
+		this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+	}
+
+	public int getThrottleRetries() {
+		return throttleRetries;
+	}
+
+	public void setThrottleRetries(int throttleRetries) {
+		this.throttleRetries = throttleRetries;
+	}
+
+	public int getBreakerFailureThreshold() {
+		return breakerFailureThreshold;
+	}
+
+	public void setBreakerFailureThreshold(int breakerFailureThreshold) {
+		this.breakerFailureThreshold = breakerFailureThreshold;
+	}
+
+	public int getBreakerOpenSeconds() {
+		return breakerOpenSeconds;
+	}
+
+	public void setBreakerOpenSeconds(int breakerOpenSeconds) {
+		this.breakerOpenSeconds = breakerOpenSeconds;
+	}
+
+	public long getMaxPageBytes() {
+		return maxPageBytes;
+	}
+
+	public void setMaxPageBytes(long maxPageBytes) {
+		this.maxPageBytes = maxPageBytes;
+	}
+
+	public int getMaxIdleConnectionsPerHost() {
+		return maxIdleConnectionsPerHost;
+	}
+
+	public void setMaxIdleConnectionsPerHost(int maxIdleConnectionsPerHost) {
+		this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+	}
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+}
@@ -8,6 +8,21 @@ public class StorageProperties {
 	// 输出根目录，支持通过外部配置文件覆盖
 	private String outputBaseDir = "output";
 
+	// 前沿队列每段在内存中保留的条目数，超出部分按段写入输出目录下的 .sitecloner/frontier
+	private int frontierMemoryEntries = 10000;
+
+	// 断点保存间隔（秒），写入输出目录下的 .sitecloner/checkpoint；<=0 表示只在任务取消时保存
+	private int checkpointIntervalSeconds = 30;
+
+	// 内容寻址文件库（outputBaseDir/.blobs）：相同内容在所有克隆间只存一份，克隆中的文件为硬链接
+	private boolean blobStoreEnabled = true;
+
+	// 所有任务共享的 HTTP 缓存（outputBaseDir/.http-cache）总大小上限（字节），0 表示关闭
+	private long httpCacheMaxBytes = 2L * 1024 * 1024 * 1024;
+
+	// 缓存条目最长新鲜时间（秒），即使响应声明了更长的 max-age/Expires
+	private long httpCacheMaxAgeSeconds = 86400;
+
 	public String getOutputBaseDir() {
 		return outputBaseDir;
 	}
@@ -15,4 +30,44 @@ public class StorageProperties {
 	public void setOutputBaseDir(String outputBaseDir) {
 		this.outputBaseDir = outputBaseDir;
 	}
+
+	public int getFrontierMemoryEntries() {
+		return frontierMemoryEntries;
+	}
+
+	public void setFrontierMemoryEntries(int frontierMemoryEntries) {
+		this.frontierMemoryEntries = frontierMemoryEntries;
+	}
+
+	public int getCheckpointIntervalSeconds() {
+		return checkpointIntervalSeconds;
+	}
+
+	public void setCheckpointIntervalSeconds(int checkpointIntervalSeconds) {
+		this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+	}
+
+	public boolean isBlobStoreEnabled() {
+		return blobStoreEnabled;
+	}
+
+	public void setBlobStoreEnabled(boolean blobStoreEnabled) {
+		this.blobStoreEnabled = blobStoreEnabled;
+	}
+
+	public long getHttpCacheMaxBytes() {
+		return httpCacheMaxBytes;
+	}
+
+	public void setHttpCacheMaxBytes(long httpCacheMaxBytes) {
+		this.httpCacheMaxBytes = httpCacheMaxBytes;
+	}
+
+	public long getHttpCacheMaxAgeSeconds() {
+		return httpCacheMaxAgeSeconds;
+	}
+
+	public void setHttpCacheMaxAgeSeconds(long httpCacheMaxAgeSeconds) {
+		this.httpCacheMaxAgeSeconds = httpCacheMaxAgeSeconds;
+	}
 }
@@ -0,0 +1,141 @@
+package com.example.sitecloner.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 采集任务队列：排队任务保存在 crawl_task 表中（状态“未开始”），服务重启不丢失，
+ * 由调度线程按优先级取出交给固定数量的 worker 执行。
+ */
+@ConfigurationProperties(prefix = "sitecloner.queue")
+public class TaskQueueProperties {
+
+	// 同时运行的采集任务数，0 表示按 CPU 核数的一半（至少 2）
+	private int workers = 0;
+
+	// 准入控制：排队（未开始）任务总数上限，超过时拒绝新提交
+	private int maxQueued = 1000;
+
+	// 每个租户排队任务数上限
+	private int maxQueuedPerTenant = 200;
+
+	// 每个租户同时运行的任务数上限，0 表示不限制（默认不限制：未指定租户的请求都归入 default 租户，限制它等于限制整个实例）
+	private int maxRunningPerTenant = 0;
+
+	// 调度线程轮询队列表的间隔（毫秒）；提交与任务结束时会立即唤醒
+	private long pollIntervalMillis = 2000;
+
+	// 多个实例共享同一数据库时的实例标识，留空则使用 进程号@主机名；固定配置后重启能立即收回本实例未完成的任务
+	private String nodeId = "";
+
+	// 任务租约时长与续约间隔（秒）：实例停止续约超过租约时长后，其它实例接手该任务（从断点续采）
+	private int leaseSeconds = 60;
+
+	private int heartbeatSeconds = 15;
+
+	// 运行中任务的进度（页数、资产数、字节数、错误）批量写回数据库的间隔（秒）
+	private int progressFlushSeconds = 5;
+
+	// 已结束的任务在内存中保留的时长（秒）与个数上限，超出后从内存移除，查询时改从数据库读取；0 表示不按该项清理
+	private long finishedTaskTtlSeconds = 600;
+
+	private int maxFinishedTasks = 200;
+
+	// 任务进度推送（SSE）的间隔（毫秒）：每个间隔内的变化合并为一次推送
+	private long eventIntervalMillis = 1000;
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+
+	public int getMaxQueuedPerTenant() {
+		return maxQueuedPerTenant;
+	}
+
+	public void setMaxQueuedPerTenant(int maxQueuedPerTenant) {
+		this.maxQueuedPerTenant = maxQueuedPerTenant;
+	}
+
+	public int getMaxRunningPerTenant() {
+		return maxRunningPerTenant;
+	}
+
+	public void setMaxRunningPerTenant(int maxRunningPerTenant) {
+		this.maxRunningPerTenant = maxRunningPerTenant;
+	}
+
+	public long getPollIntervalMillis() {
+		return pollIntervalMillis;
+	}
+
+	public void setPollIntervalMillis(long pollIntervalMillis) {
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public void setNodeId(String nodeId) {
+		this.nodeId = nodeId;
+	}
+
+	public int getLeaseSeconds() {
+		return leaseSeconds;
+	}
+
+	public void setLeaseSeconds(int leaseSeconds) {
+		this.leaseSeconds = leaseSeconds;
+	}
+
+	public int getHeartbeatSeconds() {
+		return heartbeatSeconds;
+	}
+
+	public void setHeartbeatSeconds(int heartbeatSeconds) {
+		this.heartbeatSeconds = heartbeatSeconds;
+	}
+
+	public int getProgressFlushSeconds() {
+		return progressFlushSeconds;
+	}
+
+	public void setProgressFlushSeconds(int progressFlushSeconds) {
+		this.progressFlushSeconds = progressFlushSeconds;
+	}
+
+	public long getFinishedTaskTtlSeconds() {
+		return finishedTaskTtlSeconds;
+	}
+
+	public void setFinishedTaskTtlSeconds(long finishedTaskTtlSeconds) {
+		this.finishedTaskTtlSeconds = finishedTaskTtlSeconds;
+	}
+
+	public int getMaxFinishedTasks() {
+		return maxFinishedTasks;
+	}
+
+	public void setMaxFinishedTasks(int maxFinishedTasks) {
+		this.maxFinishedTasks = maxFinishedTasks;
+	}
+
+	public long getEventIntervalMillis() {
+		return eventIntervalMillis;
+	}
+
+	public void setEventIntervalMillis(long eventIntervalMillis) {
+		this.eventIntervalMillis = eventIntervalMillis;
+	}
+}
@@ -3,11 +3,20 @@ package com.example.sitecloner.controller;
 import com.example.sitecloner.model.CrawlRequest;
 import com.example.sitecloner.model.CrawlResult;
 import com.example.sitecloner.model.CrawlTask;
+import com.example.sitecloner.model.CrawlTaskEntity;
+import com.example.sitecloner.repo.CrawlTaskErrorRepository;
 import com.example.sitecloner.repo.CrawlTaskRepository;
+import com.example.sitecloner.service.BlobStore;
 import com.example.sitecloner.service.CrawlManager;
 import com.example.sitecloner.service.CrawlService;
+import com.example.sitecloner.service.HttpFetcher;
+import com.example.sitecloner.service.TaskEventHub;
+import com.example.sitecloner.service.TaskRejectedException;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -16,6 +25,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -29,11 +39,21 @@ public class AdminController {
 	private final CrawlService crawlService;
     private final CrawlManager crawlManager;
     private final CrawlTaskRepository taskRepo;
+    private final CrawlTaskErrorRepository errorRepo;
+    private final BlobStore blobStore;
+    private final HttpFetcher httpFetcher;
+    private final TaskEventHub taskEvents;
 
-	public AdminController(CrawlService crawlService, CrawlManager crawlManager, CrawlTaskRepository taskRepo) {
+	public AdminController(CrawlService crawlService, CrawlManager crawlManager, CrawlTaskRepository taskRepo,
+	                       CrawlTaskErrorRepository errorRepo, BlobStore blobStore, HttpFetcher httpFetcher,
+	                       TaskEventHub taskEvents) {
 		this.crawlService = crawlService;
         this.crawlManager = crawlManager;
         this.taskRepo = taskRepo;
+        this.errorRepo = errorRepo;
+        this.blobStore = blobStore;
+        this.httpFetcher = httpFetcher;
+        this.taskEvents = taskEvents;
 	}
 
 	@GetMapping("/")
@@ -57,10 +77,10 @@ public class AdminController {
 		return "result";
 	}
 
-    // 异步提交采集任务（多站点并发）
+    // 异步提交采集任务：进入持久化队列，返回任务 ID、排队位置与预计等待时间；队列已满时返回 429
     @PostMapping("/crawl/async")
     @ResponseBody
-    public ResponseEntity<String> crawlAsync(@RequestBody CrawlRequest form) {
+    public ResponseEntity<Object> crawlAsync(@RequestBody CrawlRequest form) {
         if (form == null || form.getStartUrl() == null || form.getStartUrl().trim().isEmpty()) {
             return ResponseEntity.badRequest().body("startUrl 不能为空");
         }
@@ -69,17 +89,32 @@ public class AdminController {
                 + ", sameDomain=" + form.isSameDomain()
                 + ", maxDepth=" + form.getMaxDepth()
                 + ", maxPages=" + form.getMaxPages()
+                + ", fetchConcurrency=" + form.getFetchConcurrency()
+                + ", incremental=" + form.isIncremental()
                 + ", debugOnlyHome=" + form.isDebugOnlyHome()
                 + ", outputName=" + form.getOutputName()
                 + ", titleSuffix=" + form.getTitleSuffix()
                 + ", sitemapDomain=" + form.getSitemapDomain()
+                + ", priority=" + form.getPriority()
+                + ", tenant=" + form.getTenant()
         );
         java.util.List<com.example.sitecloner.model.ReplacementRule> rr = form.getReplaceRules();
         if (rr != null) {
             System.out.println("[FORM][ASYNC][REPLACE-RULES] size=" + rr.size());
         }
-        CrawlTask task = crawlManager.submit(form);
-        return ResponseEntity.ok(task.getId());
+        try {
+            CrawlTask task = crawlManager.submit(form);
+            return ResponseEntity.ok(crawlManager.queueStatus(task.getId()));
+        } catch (TaskRejectedException ex) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "60").body(ex.getMessage());
+        }
+    }
+
+    // 任务的排队情况（位置、队列长度、预计等待秒数）
+    @GetMapping("/crawl/tasks/{id}/queue")
+    @ResponseBody
+    public ResponseEntity<Object> taskQueue(@PathVariable("id") String id) {
+        return ResponseEntity.ok(crawlManager.queueStatus(id));
     }
 
     // 取消任务
@@ -90,6 +125,19 @@ public class AdminController {
         return ResponseEntity.ok(ok ? "OK" : "NotFoundOrFinished");
     }
 
+    // 续采已取消或中断的任务（有断点时从断点继续）
+    @PostMapping("/crawl/tasks/{id}/resume")
+    @ResponseBody
+    public ResponseEntity<String> resumeTask(@PathVariable("id") String id) {
+        try {
+            CrawlTask task = crawlManager.resume(id);
+            if (task == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("任务不存在");
+            return ResponseEntity.ok(task.getId());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+        }
+    }
+
     // 查询任务详情
     @GetMapping("/crawl/tasks/{id}")
     @ResponseBody
@@ -99,22 +147,81 @@ public class AdminController {
         return ResponseEntity.ok(t);
     }
 
-    // 列出所有任务
+    // 分页列出任务（按开始时间倒序），status 为 QUEUED/RUNNING/SUCCEEDED/FAILED/CANCELLED/INTERRUPTED 时只列该状态
     @GetMapping("/crawl/tasks")
     @ResponseBody
-    public ResponseEntity<Object> listTasks() {
-        return ResponseEntity.ok(crawlManager.list());
+    public ResponseEntity<Object> listTasks(@RequestParam(value = "status", required = false) CrawlTask.Status status,
+                                            @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                                            @RequestParam(value = "size", required = false, defaultValue = "20") int size) {
+        return ResponseEntity.ok(crawlManager.list(status, page, size));
+    }
+
+    // 任务的错误信息（按发生先后分页）
+    @GetMapping("/crawl/tasks/{id}/errors")
+    @ResponseBody
+    public ResponseEntity<Object> taskErrors(@PathVariable("id") String id,
+                                             @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                                             @RequestParam(value = "size", required = false, defaultValue = "100") int size) {
+        return ResponseEntity.ok(errorRepo.findByTaskUuid(id, PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 1000)),
+                Sort.by(Sort.Order.asc("id")))));
+    }
+
+    // 所有任务的进度推送（SSE）：先推送全量，之后每个间隔推送一次有变化的字段
+    @GetMapping(value = "/crawl/tasks/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter taskEvents() {
+        return taskEvents.subscribe(null);
+    }
+
+    // 单个任务的进度推送（SSE）
+    @GetMapping(value = "/crawl/tasks/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<SseEmitter> taskEvents(@PathVariable("id") String id) {
+        if (crawlManager.get(id) == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        return ResponseEntity.ok(taskEvents.subscribe(id));
+    }
+
+    // 回收内容库中不再被任何克隆引用的文件；dryRun=true 只统计不删除
+    @PostMapping("/admin/blobs/gc")
+    @ResponseBody
+    public ResponseEntity<Object> gcBlobs(@RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun) {
+        // 运行中的任务可能有刚入库、尚未链接的文件
+        if (crawlManager.hasActiveTasks()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("有采集任务未结束，请稍后再回收");
+        }
+        try {
+            return ResponseEntity.ok(blobStore.gc(dryRun));
+        } catch (java.io.IOException ex) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("回收失败: " + ex.getMessage());
+        }
+    }
+
+    // 共享 HTTP 缓存的条目数、大小与命中率
+    @GetMapping("/admin/http-cache/stats")
+    @ResponseBody
+    public ResponseEntity<Object> httpCacheStats() {
+        return ResponseEntity.ok(httpFetcher.cacheStats());
     }
 
     @GetMapping("/tasks")
-    public String tasksPage(Model model) {
-        model.addAttribute("tasks", crawlManager.list());
+    public String tasksPage(@RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                            @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                            Model model) {
+        Page<CrawlTask> tasks = crawlManager.list(null, page, size);
+        model.addAttribute("tasks", tasks.getContent());
+        model.addAttribute("page", tasks);
         return "tasks";
     }
 
     @GetMapping("/tasks/db")
-    public String tasksDbPage(Model model) {
-        model.addAttribute("tasks", taskRepo.findAll());
+    public String tasksDbPage(@RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                              @RequestParam(value = "size", required = false, defaultValue = "50") int size,
+                              Model model) {
+        // 按开始时间倒序分页读取，不再一次读出全表
+        Page<CrawlTaskEntity> tasks = taskRepo.findAll(PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 500)),
+                Sort.by(Sort.Order.desc("startTime"), Sort.Order.desc("id"))));
+        model.addAttribute("tasks", tasks.getContent());
+        model.addAttribute("page", tasks);
         return "tasks_db";
     }
 
@@ -145,15 +252,14 @@ public class AdminController {
 			Files.createDirectories(outDir.resolve(host));
 			Path currentLocalHtml = outDir.resolve(Paths.get(host, "index.html"));
 
-			CrawlResult debugResult = new CrawlResult();
-			String rewritten = crawlService.rewriteJsLinksInContent(jsText, pageUri, outDir, currentLocalHtml, debugResult);
+			java.util.LinkedHashSet<String> pages = new java.util.LinkedHashSet<String>();
+			String rewritten = crawlService.rewriteJsLinksInContent(jsText, pageUri, outDir, currentLocalHtml, pages);
 
 			// 写入 test2.js（与源文件同目录）
 			Path outFile = jsPath.getParent() == null ? Paths.get("test2.js") : jsPath.getParent().resolve("test2.js");
 			Files.write(outFile, rewritten.getBytes(StandardCharsets.UTF_8));
 
 			// 输出 JS 中统计出来的页面 URL 与数量，并写入侧文件 test2.pages.txt 便于查看
-			java.util.LinkedHashSet<String> pages = new java.util.LinkedHashSet<String>(debugResult.getJsPages());
 			System.out.println("[DEBUG-JS-PAGE][TOTAL] " + pages.size());
 			for (String u : pages) {
 				System.out.println("[DEBUG-JS-PAGE][URL] " + u);
@@ -13,8 +13,64 @@ public class CrawlRequest {
 
 	private int maxPages = 500;
 
+	// 单个任务内并发抓取页面的 worker 数
+	private int fetchConcurrency = 4;
+
+	// 后台资产下载 worker 数与等待队列上限
+	private int assetConcurrency = 8;
+
+	private int assetQueueSize = 1000;
+
+	// 增量采集：对上次采集过的 URL 发送条件请求，未变化则复用本地文件
+	private boolean incremental = true;
+
+	// URL 规范化：需去掉的查询参数（逗号分隔，支持 utm_* 前缀通配）
+	private String dropQueryParams = "utm_*,spm,_t";
+
+	// 与起始地址同主机的 http/https 链接统一为起始地址的协议
+	private boolean unifyScheme = true;
+
+	// 路径统一转小写（仅用于大小写不敏感的站点，如 IIS）
+	private boolean lowercasePaths = false;
+
+	// 近似重复页面（正文 SimHash 汉明距离不超过 nearDuplicateDistance 位，最大 3）不保存、不占页数，重复率高的 URL 模板不再入队
+	private boolean skipNearDuplicates = true;
+
+	private int nearDuplicateDistance = 3;
+
+	// 爬虫陷阱防护（0 表示不限制）：路径段数上限、同一路径段最多出现次数、
+	// 同一路径下不同查询串上限、同一 URL 模板（数字段归一）下的 URL 上限
+	private int maxPathDepth = 12;
+
+	private int maxRepeatedSegments = 2;
+
+	private int maxQueryVariantsPerPath = 50;
+
+	private int maxUrlsPerTemplate = 300;
+
+	// 抓取顺序：priority 按链接价值（深度、入链数、路径权重、sitemap）优先，fifo 为严格 BFS
+	private String frontierStrategy = "priority";
+
+	// 路径权重：逗号分隔的 路径片段=权重，路径包含该片段时加分（负数为减分）
+	private String urlPatternWeights = "/col/=2,/art/=-1";
+
+	// 任务预算（0 表示不限制）：运行时长（秒）、下载总字节数、网络请求总数；任一用完即停止发现新页面并结束任务
+	private long maxDurationSeconds = 0;
+
+	private long maxTotalBytes = 0;
+
+	private long maxRequests = 0;
+
+	// 单个资产的字节数上限，与全局 sitecloner.fetch.max-asset-bytes 取较小者；0 表示只用全局上限
+	private long maxAssetBytes = 0;
+
 	private String outputName; // 可选自定义输出文件夹名
 
+	// 任务队列：优先级（越大越先执行）与所属租户（用于按租户限制排队与运行数）
+	private int priority = 0;
+
+	private String tenant;
+
 	// 页面标题后缀（用于“原标题-后缀”与 H1 注入）
 	private String titleSuffix;
 
@@ -59,6 +115,174 @@ public class CrawlRequest {
 		this.maxPages = maxPages;
 	}
 
+	public int getFetchConcurrency() {
+		return fetchConcurrency;
+	}
+
+	public void setFetchConcurrency(int fetchConcurrency) {
+		this.fetchConcurrency = fetchConcurrency;
+	}
+
+	public int getAssetConcurrency() {
+		return assetConcurrency;
+	}
+
+	public void setAssetConcurrency(int assetConcurrency) {
+		this.assetConcurrency = assetConcurrency;
+	}
+
+	public int getAssetQueueSize() {
+		return assetQueueSize;
+	}
+
+	public void setAssetQueueSize(int assetQueueSize) {
+		this.assetQueueSize = assetQueueSize;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public String getDropQueryParams() {
+		return dropQueryParams;
+	}
+
+	public void setDropQueryParams(String dropQueryParams) {
+		this.dropQueryParams = dropQueryParams;
+	}
+
+	public boolean isUnifyScheme() {
+		return unifyScheme;
+	}
+
+	public void setUnifyScheme(boolean unifyScheme) {
+		this.unifyScheme = unifyScheme;
+	}
+
+	public boolean isLowercasePaths() {
+		return lowercasePaths;
+	}
+
+	public void setLowercasePaths(boolean lowercasePaths) {
+		this.lowercasePaths = lowercasePaths;
+	}
+
+	public boolean isSkipNearDuplicates() {
+		return skipNearDuplicates;
+	}
+
+	public void setSkipNearDuplicates(boolean skipNearDuplicates) {
+		this.skipNearDuplicates = skipNearDuplicates;
+	}
+
+	public int getNearDuplicateDistance() {
+		return nearDuplicateDistance;
+	}
+
+	public void setNearDuplicateDistance(int nearDuplicateDistance) {
+		this.nearDuplicateDistance = nearDuplicateDistance;
+	}
+
+	public int getMaxPathDepth() {
+		return maxPathDepth;
+	}
+
+	public void setMaxPathDepth(int maxPathDepth) {
+		this.maxPathDepth = maxPathDepth;
+	}
+
+	public int getMaxRepeatedSegments() {
+		return maxRepeatedSegments;
+	}
+
+	public void setMaxRepeatedSegments(int maxRepeatedSegments) {
+		this.maxRepeatedSegments = maxRepeatedSegments;
+	}
+
+	public int getMaxQueryVariantsPerPath() {
+		return maxQueryVariantsPerPath;
+	}
+
+	public void setMaxQueryVariantsPerPath(int maxQueryVariantsPerPath) {
+		this.maxQueryVariantsPerPath = maxQueryVariantsPerPath;
+	}
+
+	public int getMaxUrlsPerTemplate() {
+		return maxUrlsPerTemplate;
+	}
+
+	public void setMaxUrlsPerTemplate(int maxUrlsPerTemplate) {
+		this.maxUrlsPerTemplate = maxUrlsPerTemplate;
+	}
+
+	public String getFrontierStrategy() {
+		return frontierStrategy;
+	}
+
+	public void setFrontierStrategy(String frontierStrategy) {
+		this.frontierStrategy = frontierStrategy;
+	}
+
+	public String getUrlPatternWeights() {
+		return urlPatternWeights;
+	}
+
+	public void setUrlPatternWeights(String urlPatternWeights) {
+		this.urlPatternWeights = urlPatternWeights;
+	}
+
+	public long getMaxDurationSeconds() {
+		return maxDurationSeconds;
+	}
+
+	public void setMaxDurationSeconds(long maxDurationSeconds) {
+		this.maxDurationSeconds = maxDurationSeconds;
+	}
+
+	public long getMaxTotalBytes() {
+		return maxTotalBytes;
+	}
+
+	public void setMaxTotalBytes(long maxTotalBytes) {
+		this.maxTotalBytes = maxTotalBytes;
+	}
+
+	public long getMaxRequests() {
+		return maxRequests;
+	}
+
+	public void setMaxRequests(long maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	public long getMaxAssetBytes() {
+		return maxAssetBytes;
+	}
+
+	public void setMaxAssetBytes(long maxAssetBytes) {
+		this.maxAssetBytes = maxAssetBytes;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public void setTenant(String tenant) {
+		this.tenant = tenant;
+	}
+
 	public String getOutputName() {
 		return outputName;
 	}
@@ -2,30 +2,62 @@ package com.example.sitecloner.model;
 
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 采集结果，采集过程中由页面 worker 与资产 worker 并发更新。
+ * 计数使用 LongAdder，集合使用并发实现，错误信息只保留最近 {@link #MAX_ERRORS} 条；
+ * 进度查询读取 {@link #snapshot()}，不加锁，也不会与采集线程互相阻塞。
+ */
 public class CrawlResult {
 
-	private String outputDirectory;
-	private int pagesDownloaded;
-	private int assetsDownloaded;
-	private Duration elapsed;
-	private final List<String> errors = new ArrayList<>();
+	public static final int MAX_ERRORS = 1000;
+	// 快照中附带的最近错误条数
+	private static final int SNAPSHOT_ERRORS = 20;
 
-	// JS 中识别出的需要下载的页面 URL（绝对地址字符串）
-	private final Set<String> jsPages = new HashSet<>();
+	private volatile String outputDirectory;
+	private final LongAdder pagesDownloaded = new LongAdder();
+	private final LongAdder assetsDownloaded = new LongAdder();
+	// 条件请求命中 304、直接复用本地文件的页面与资产数
+	private final LongAdder notModified = new LongAdder();
+	// 判为近似重复而未保存的页面数，以及因所属 URL 模板重复率高而未入队的链接数
+	private final LongAdder nearDuplicatesSkipped = new LongAdder();
+	private final LongAdder duplicateLinksPruned = new LongAdder();
+	// 命中爬虫陷阱防护而未入队的链接数
+	private final LongAdder trapLinksBlocked = new LongAdder();
+	// 已读取的响应体字节数（网络传输字节，缓存命中不计）
+	private final LongAdder bytesDownloaded = new LongAdder();
+	// 最近开始处理的页面
+	private volatile String currentUrl;
+	private volatile Duration elapsed;
+	// 任务被取消或中断、未完整跑完（可从断点继续）
+	private volatile boolean cancelled;
+	// 因预算（时长、字节、请求数）用完而提前结束时的原因
+	private volatile String budgetExhausted;
+	// 最近的错误信息（超出上限时丢弃最早的），errorCount 为累计总数
+	private final ConcurrentLinkedDeque<String> errors = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger retainedErrors = new AtomicInteger();
+	private final LongAdder errorCount = new LongAdder();
+	// 尚未写入数据库的错误，由任务管理定期取走批量写入；积压超过 MAX_ERRORS 条时不再排队
+	private final ConcurrentLinkedQueue<String> unsavedErrors = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger unsavedCount = new AtomicInteger();
 
 	// 已保存的页面（绝对 URL），用于生成 sitemap.xml
-	private final Set<String> pages = new TreeSet<>();
+	private final Set<String> pages = new ConcurrentSkipListSet<>();
 
-	// 本次任务内已下载过的资产（绝对 URL 字符串），用于去重
-	private final Set<String> downloadedAssets = new HashSet<>();
+	// 本次任务内已下载过的资产（绝对 URL 的指纹），用于去重
+	private final FingerprintSet downloadedAssets = new FingerprintSet();
 
-	// 已对其执行过 JS 资产扫描的 JS 资源（绝对 URI 字符串）
-	private final Set<String> processedJsUris = new HashSet<>();
+	// 已对其执行过 JS 资产扫描的 JS 资源（绝对 URI 的指纹）
+	private final FingerprintSet processedJsUris = new FingerprintSet();
 
 	public String getOutputDirectory() {
 		return outputDirectory;
@@ -35,20 +67,108 @@ public class CrawlResult {
 		this.outputDirectory = outputDirectory;
 	}
 
-	public int getPagesDownloaded() {
-		return pagesDownloaded;
+	public long getPagesDownloaded() {
+		return pagesDownloaded.sum();
 	}
 
-	public void setPagesDownloaded(int pagesDownloaded) {
-		this.pagesDownloaded = pagesDownloaded;
+	// 仅用于断点恢复（采集 worker 启动前）
+	public void setPagesDownloaded(long pagesDownloaded) {
+		this.pagesDownloaded.reset();
+		this.pagesDownloaded.add(pagesDownloaded);
 	}
 
-	public int getAssetsDownloaded() {
-		return assetsDownloaded;
+	public void incrementPagesDownloaded() {
+		pagesDownloaded.increment();
 	}
 
-	public void setAssetsDownloaded(int assetsDownloaded) {
-		this.assetsDownloaded = assetsDownloaded;
+	public long getAssetsDownloaded() {
+		return assetsDownloaded.sum();
+	}
+
+	// 仅用于断点恢复（采集 worker 启动前）
+	public void setAssetsDownloaded(long assetsDownloaded) {
+		this.assetsDownloaded.reset();
+		this.assetsDownloaded.add(assetsDownloaded);
+	}
+
+	public void incrementAssetsDownloaded() {
+		assetsDownloaded.increment();
+	}
+
+	public long getNotModified() {
+		return notModified.sum();
+	}
+
+	// 仅用于断点恢复（采集 worker 启动前）
+	public void setNotModified(long notModified) {
+		this.notModified.reset();
+		this.notModified.add(notModified);
+	}
+
+	public void incrementNotModified() {
+		notModified.increment();
+	}
+
+	public long getNearDuplicatesSkipped() {
+		return nearDuplicatesSkipped.sum();
+	}
+
+	public void incrementNearDuplicatesSkipped() {
+		nearDuplicatesSkipped.increment();
+	}
+
+	public long getDuplicateLinksPruned() {
+		return duplicateLinksPruned.sum();
+	}
+
+	public void incrementDuplicateLinksPruned() {
+		duplicateLinksPruned.increment();
+	}
+
+	public long getTrapLinksBlocked() {
+		return trapLinksBlocked.sum();
+	}
+
+	public void incrementTrapLinksBlocked() {
+		trapLinksBlocked.increment();
+	}
+
+	public long getBytesDownloaded() {
+		return bytesDownloaded.sum();
+	}
+
+	// 仅用于按数据库记录生成快照
+	public void setBytesDownloaded(long bytesDownloaded) {
+		this.bytesDownloaded.reset();
+		this.bytesDownloaded.add(bytesDownloaded);
+	}
+
+	public void addBytesDownloaded(long n) {
+		bytesDownloaded.add(n);
+	}
+
+	public String getCurrentUrl() {
+		return currentUrl;
+	}
+
+	public void setCurrentUrl(String currentUrl) {
+		this.currentUrl = currentUrl;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void setCancelled(boolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	public String getBudgetExhausted() {
+		return budgetExhausted;
+	}
+
+	public void setBudgetExhausted(String budgetExhausted) {
+		this.budgetExhausted = budgetExhausted;
 	}
 
 	public Duration getElapsed() {
@@ -59,22 +179,44 @@ public class CrawlResult {
 		this.elapsed = elapsed;
 	}
 
+	// 保留的错误信息副本（最多 MAX_ERRORS 条）
 	public List<String> getErrors() {
-		return errors;
+		return Collections.unmodifiableList(new ArrayList<>(errors));
 	}
 
-	public void addError(String message) {
-		this.errors.add(message);
+	// 累计错误数，包括已被丢弃的
+	public long getErrorCount() {
+		return errorCount.sum();
 	}
 
-	public Set<String> getJsPages() {
-		return jsPages;
+	// 仅用于按数据库记录生成快照（不含错误内容）
+	public void setErrorCount(long errorCount) {
+		this.errorCount.reset();
+		this.errorCount.add(errorCount);
 	}
 
-	public void addJsPage(String url) {
-		if (url != null && !url.isEmpty()) {
-			jsPages.add(url);
+	public void addError(String message) {
+		errorCount.increment();
+		errors.addLast(String.valueOf(message));
+		if (unsavedCount.incrementAndGet() <= MAX_ERRORS) {
+			unsavedErrors.add(String.valueOf(message));
+		} else {
+			unsavedCount.decrementAndGet();
 		}
+		if (retainedErrors.incrementAndGet() > MAX_ERRORS && errors.pollFirst() != null) {
+			retainedErrors.decrementAndGet();
+		}
+	}
+
+	// 取出尚未写入数据库的错误
+	public List<String> drainUnsavedErrors() {
+		List<String> drained = new ArrayList<>();
+		String message;
+		while ((message = unsavedErrors.poll()) != null) {
+			unsavedCount.decrementAndGet();
+			drained.add(message);
+		}
+		return drained;
 	}
 
 	public Set<String> getPages() {
@@ -87,6 +229,12 @@ public class CrawlResult {
 		}
 	}
 
+	public void removePage(String url) {
+		if (url != null) {
+			pages.remove(url);
+		}
+	}
+
 	public boolean hasAsset(String absUrl) {
 		return absUrl != null && downloadedAssets.contains(absUrl);
 	}
@@ -96,10 +244,114 @@ public class CrawlResult {
 		return downloadedAssets.add(absUrl);
 	}
 
+	// 已下载资产的指纹集合（断点保存用）
+	public FingerprintSet assetFingerprints() {
+		return downloadedAssets;
+	}
+
 	public boolean tryMarkJsProcessed(String jsUri) {
 		if (jsUri == null || jsUri.isEmpty()) return false;
 		return processedJsUris.add(jsUri);
 	}
-}
 
+	/**
+	 * 当前进度的不可变快照，供状态查询接口序列化；只读取计数与最近的错误，不遍历页面集合。
+	 */
+	public Snapshot snapshot() {
+		List<String> recent = new ArrayList<>(SNAPSHOT_ERRORS);
+		Iterator<String> it = errors.descendingIterator();
+		while (it.hasNext() && recent.size() < SNAPSHOT_ERRORS) recent.add(it.next());
+		Collections.reverse(recent);
+		return new Snapshot(this, Collections.unmodifiableList(recent));
+	}
+
+	public static final class Snapshot {
+		private final String outputDirectory;
+		private final long pagesDownloaded;
+		private final long assetsDownloaded;
+		private final long notModified;
+		private final long nearDuplicatesSkipped;
+		private final long duplicateLinksPruned;
+		private final long trapLinksBlocked;
+		private final long bytesDownloaded;
+		private final String currentUrl;
+		private final long errorCount;
+		private final List<String> recentErrors;
+		private final Duration elapsed;
+		private final boolean cancelled;
+		private final String budgetExhausted;
+
+		private Snapshot(CrawlResult r, List<String> recentErrors) {
+			this.outputDirectory = r.outputDirectory;
+			this.pagesDownloaded = r.getPagesDownloaded();
+			this.assetsDownloaded = r.getAssetsDownloaded();
+			this.notModified = r.getNotModified();
+			this.nearDuplicatesSkipped = r.getNearDuplicatesSkipped();
+			this.duplicateLinksPruned = r.getDuplicateLinksPruned();
+			this.trapLinksBlocked = r.getTrapLinksBlocked();
+			this.bytesDownloaded = r.getBytesDownloaded();
+			this.currentUrl = r.currentUrl;
+			this.errorCount = r.getErrorCount();
+			this.recentErrors = recentErrors;
+			this.elapsed = r.elapsed;
+			this.cancelled = r.cancelled;
+			this.budgetExhausted = r.budgetExhausted;
+		}
+
+		public String getOutputDirectory() {
+			return outputDirectory;
+		}
+
+		public long getPagesDownloaded() {
+			return pagesDownloaded;
+		}
+
+		public long getAssetsDownloaded() {
+			return assetsDownloaded;
+		}
+
+		public long getNotModified() {
+			return notModified;
+		}
 
+		public long getNearDuplicatesSkipped() {
+			return nearDuplicatesSkipped;
+		}
+
+		public long getDuplicateLinksPruned() {
+			return duplicateLinksPruned;
+		}
+
+		public long getTrapLinksBlocked() {
+			return trapLinksBlocked;
+		}
+
+		public long getBytesDownloaded() {
+			return bytesDownloaded;
+		}
+
+		public String getCurrentUrl() {
+			return currentUrl;
+		}
+
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		public List<String> getRecentErrors() {
+			return recentErrors;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public String getBudgetExhausted() {
+			return budgetExhausted;
+		}
+	}
+}
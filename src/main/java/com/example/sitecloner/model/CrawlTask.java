@@ -5,27 +5,47 @@ import java.time.Instant;
 import java.util.UUID;
 
 public class CrawlTask {
-    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED }
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED, INTERRUPTED }
 
     private final String id;
     private final CrawlRequest request;
     private volatile CrawlResult result;
+    // 结束后只保留结果快照，页面集合、资产指纹等随结果对象释放
+    private volatile CrawlResult.Snapshot finalResult;
     private volatile Status status;
     private volatile Instant startTime;
     private volatile Instant endTime;
     private volatile String errorMessage;
     private volatile String threadName;
+    // 执行该任务的实例
+    private volatile String node;
 
     public CrawlTask(CrawlRequest request) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), request);
+    }
+
+    // 断点续采时沿用原任务 ID
+    public CrawlTask(String id, CrawlRequest request) {
+        this.id = id;
         this.request = request;
         this.status = Status.QUEUED;
     }
 
     public String getId() { return id; }
     public CrawlRequest getRequest() { return request; }
-    public CrawlResult getResult() { return result; }
+    // 接口返回进度快照；采集中的结果对象由采集线程持续更新，不直接序列化
+    public CrawlResult.Snapshot getResult() {
+        CrawlResult r = result;
+        return r != null ? r.snapshot() : finalResult;
+    }
     public void setResult(CrawlResult result) { this.result = result; }
+    // 任务结束：以快照代替结果对象
+    public void freezeResult() {
+        CrawlResult r = result;
+        if (r == null) return;
+        finalResult = r.snapshot();
+        result = null;
+    }
     public Status getStatus() { return status; }
     public void setStatus(Status status) { this.status = status; }
     public Instant getStartTime() { return startTime; }
@@ -36,17 +56,22 @@ public class CrawlTask {
     public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
     public String getThreadName() { return threadName; }
     public void setThreadName(String threadName) { this.threadName = threadName; }
+    public String getNode() { return node; }
+    public void setNode(String node) { this.node = node; }
 
     public long getPagesDownloaded() {
-        return result == null ? 0 : result.getPagesDownloaded();
+        CrawlResult.Snapshot r = getResult();
+        return r == null ? 0 : r.getPagesDownloaded();
     }
 
     public long getAssetsDownloaded() {
-        return result == null ? 0 : result.getAssetsDownloaded();
+        CrawlResult.Snapshot r = getResult();
+        return r == null ? 0 : r.getAssetsDownloaded();
     }
 
-    public int getErrorsCount() {
-        return result == null ? 0 : result.getErrors().size();
+    public long getErrorsCount() {
+        CrawlResult.Snapshot r = getResult();
+        return r == null ? 0 : r.getErrorCount();
     }
 
     public String getDuration() {
@@ -4,7 +4,12 @@ import javax.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "crawl_task")
+@Table(name = "crawl_task", indexes = {
+        @Index(name = "idx_crawl_task_queue", columnList = "status,priority,id"),
+        // 任务列表按开始时间倒序分页，可按状态筛选
+        @Index(name = "idx_crawl_task_status_start", columnList = "status,start_time"),
+        @Index(name = "idx_crawl_task_start", columnList = "start_time")
+})
 public class CrawlTaskEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,6 +45,14 @@ public class CrawlTaskEntity {
     @Column(name = "assets_downloaded")
     private Integer assetsDownloaded;
 
+    // 采集中按间隔批量更新的进度：下载字节数与累计错误数（错误内容在 crawl_task_error 表）
+    @Column(name = "bytes_downloaded")
+    private Long bytesDownloaded;
+
+    @Column(name = "error_count")
+    private Long errorCount;
+
+    // 早期任务的错误信息，新任务的错误写入 crawl_task_error 表
     @Column(name = "errors", columnDefinition = "TEXT")
     private String errorsJson;
 
@@ -68,6 +81,33 @@ public class CrawlTaskEntity {
     @Column(name = "replace_rules", columnDefinition = "TEXT")
     private String replaceRulesJson;
 
+    // 完整的采集参数（JSON），服务重启或手动续采时据此重建任务
+    @Column(name = "request_json", columnDefinition = "TEXT")
+    private String requestJson;
+
+    // 任务队列：优先级越大越先执行，同优先级按 id 先后；租户用于排队与并发限制
+    @Column(name = "priority")
+    private Integer priority;
+
+    @Column(name = "tenant", length = 64)
+    private String tenant;
+
+    // 出队后从断点续采（取消、中断后重新排队的任务），新任务为 false
+    @Column(name = "resume_requested")
+    private Boolean resumeRequested;
+
+    // 多实例共享队列：执行该任务的实例与租约到期时间，执行中的实例定期续约；租约过期的任务由其它实例接手
+    @Column(name = "node_id", length = 128)
+    private String nodeId;
+
+    @Column(name = "lease_until")
+    private Instant leaseUntil;
+
+    // 乐观锁：认领、接手与取消都会递增版本，失去租约的实例再写回整行时会失败，不会覆盖新持有者的状态
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public String getTaskUuid() { return taskUuid; }
@@ -90,6 +130,10 @@ public class CrawlTaskEntity {
     public void setPagesDownloaded(Integer pagesDownloaded) { this.pagesDownloaded = pagesDownloaded; }
     public Integer getAssetsDownloaded() { return assetsDownloaded; }
     public void setAssetsDownloaded(Integer assetsDownloaded) { this.assetsDownloaded = assetsDownloaded; }
+    public Long getBytesDownloaded() { return bytesDownloaded; }
+    public void setBytesDownloaded(Long bytesDownloaded) { this.bytesDownloaded = bytesDownloaded; }
+    public Long getErrorCount() { return errorCount; }
+    public void setErrorCount(Long errorCount) { this.errorCount = errorCount; }
     public String getErrorsJson() { return errorsJson; }
     public void setErrorsJson(String errorsJson) { this.errorsJson = errorsJson; }
     public Instant getStartTime() { return startTime; }
@@ -108,4 +152,18 @@ public class CrawlTaskEntity {
     public void setSitemapDomain(String sitemapDomain) { this.sitemapDomain = sitemapDomain; }
     public String getReplaceRulesJson() { return replaceRulesJson; }
     public void setReplaceRulesJson(String replaceRulesJson) { this.replaceRulesJson = replaceRulesJson; }
+    public String getRequestJson() { return requestJson; }
+    public void setRequestJson(String requestJson) { this.requestJson = requestJson; }
+    public Integer getPriority() { return priority; }
+    public void setPriority(Integer priority) { this.priority = priority; }
+    public String getTenant() { return tenant; }
+    public void setTenant(String tenant) { this.tenant = tenant; }
+    public Boolean getResumeRequested() { return resumeRequested; }
+    public void setResumeRequested(Boolean resumeRequested) { this.resumeRequested = resumeRequested; }
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+    public Instant getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(Instant leaseUntil) { this.leaseUntil = leaseUntil; }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 }
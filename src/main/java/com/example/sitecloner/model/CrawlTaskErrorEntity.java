@@ -0,0 +1,33 @@
+package com.example.sitecloner.model;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+// 任务的错误信息，每条一行；采集中由 CrawlManager 按间隔用 JDBC 批量写入
+@Entity
+@Table(name = "crawl_task_error", indexes = {
+        @Index(name = "idx_crawl_task_error_task", columnList = "task_uuid,id")
+})
+public class CrawlTaskErrorEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "task_uuid", nullable = false, length = 64)
+    private String taskUuid;
+
+    @Column(name = "message", columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getTaskUuid() { return taskUuid; }
+    public void setTaskUuid(String taskUuid) { this.taskUuid = taskUuid; }
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+}
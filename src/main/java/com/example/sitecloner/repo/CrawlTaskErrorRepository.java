@@ -0,0 +1,11 @@
+package com.example.sitecloner.repo;
+
+import com.example.sitecloner.model.CrawlTaskErrorEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+// 只用于查询；写入走 JDBC 批量插入
+public interface CrawlTaskErrorRepository extends JpaRepository<CrawlTaskErrorEntity, Long> {
+    Page<CrawlTaskErrorEntity> findByTaskUuid(String taskUuid, Pageable page);
+}
@@ -1,8 +1,102 @@
 package com.example.sitecloner.repo;
 
 import com.example.sitecloner.model.CrawlTaskEntity;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 public interface CrawlTaskRepository extends JpaRepository<CrawlTaskEntity, Long> {
     CrawlTaskEntity findByTaskUuid(String taskUuid);
+
+    List<CrawlTaskEntity> findByStatusIn(Collection<String> statuses);
+
+    // 任务列表分页（排序由 Pageable 指定，走 status,start_time 索引）；不筛选状态时用 findAll(Pageable)
+    Page<CrawlTaskEntity> findByStatus(String status, Pageable page);
+
+    // 任务队列：按优先级从高到低、同优先级按提交先后取排队中的任务
+    @Query("select t from CrawlTaskEntity t where t.status = :status order by coalesce(t.priority, 0) desc, t.id asc")
+    List<CrawlTaskEntity> findQueue(@Param("status") String status, Pageable page);
+
+    long countByStatus(String status);
+
+    long countByStatusAndTenant(String status, String tenant);
+
+    // 租约未过期的任务数：租约过期或从未持有租约的行不再有实例在执行
+    long countByStatusAndLeaseUntilAfter(String status, Instant now);
+
+    // 排在该任务之前的任务数
+    @Query("select count(t) from CrawlTaskEntity t where t.status = :status and (coalesce(t.priority, 0) > :priority"
+            + " or (coalesce(t.priority, 0) = :priority and t.id < :id))")
+    long countAhead(@Param("status") String status, @Param("priority") int priority, @Param("id") long id);
+
+    // 最近完成的任务，用于估算排队等待时间
+    List<CrawlTaskEntity> findTop20ByStatusOrderByEndTimeDesc(String status);
+
+    // 按状态条件更新：只有当前状态为 from 时才改为 to，返回更新行数；用于取消排队或运行中的任务，递增版本使执行中的实例写回失败
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.status = :to, t.version = t.version + 1 where t.id = :id and t.status = :from")
+    int transition(@Param("id") long id, @Param("from") String from, @Param("to") String to);
+
+    // 重新排队续采：只有当前状态在 from 之中、且没有其它实例仍在执行（已写回结束时间或租约已过期）时才改为排队并清空执行节点与租约，
+    // 返回更新行数（0 表示任务正在排队或运行，或已被其它请求续采）
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.status = :to, t.resumeRequested = true, t.nodeId = null, t.leaseUntil = null,"
+            + " t.endTime = null, t.errorMessage = null, t.version = t.version + 1 where t.id = :id and t.status in :from"
+            + " and (t.nodeId is null or t.nodeId = :node or t.endTime is not null or t.leaseUntil < :now)")
+    int requeue(@Param("id") long id, @Param("from") Collection<String> from, @Param("to") String to,
+                @Param("node") String node, @Param("now") Instant now);
+
+    // 认领排队任务：状态仍为 from 时改为 to 并写入租约，返回更新行数（0 表示已被其它实例认领或被取消）
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.status = :to, t.nodeId = :node, t.leaseUntil = :until, t.version = t.version + 1"
+            + " where t.id = :id and t.status = :from")
+    int claim(@Param("id") long id, @Param("from") String from, @Param("to") String to,
+              @Param("node") String node, @Param("until") Instant until);
+
+    // 租约已过期的运行中任务（执行它的实例已停止续约）
+    @Query("select t from CrawlTaskEntity t where t.status = :status and t.leaseUntil < :now"
+            + " order by coalesce(t.priority, 0) desc, t.id asc")
+    List<CrawlTaskEntity> findExpired(@Param("status") String status, @Param("now") Instant now, Pageable page);
+
+    // 接手租约过期的任务，出队后从断点续采
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.nodeId = :node, t.leaseUntil = :until, t.resumeRequested = true, t.version = t.version + 1"
+            + " where t.id = :id and t.status = :status and t.leaseUntil < :now")
+    int reclaim(@Param("id") long id, @Param("status") String status, @Param("node") String node,
+                @Param("until") Instant until, @Param("now") Instant now);
+
+    // 开始执行：只更新开始时间与线程名（状态与租约已在认领时写入）
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.startTime = :start, t.threadName = :thread where t.id = :id and t.nodeId = :node")
+    int markStarted(@Param("id") long id, @Param("node") String node, @Param("start") Instant start, @Param("thread") String thread);
+
+    // 执行结束：写回状态与最终统计，递增版本；行已被其它实例接手时返回 0
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.status = :status, t.outputDir = :outputDir, t.pagesDownloaded = :pages,"
+            + " t.assetsDownloaded = :assets, t.bytesDownloaded = :bytes, t.errorCount = :errors, t.endTime = :end,"
+            + " t.errorMessage = :message, t.version = t.version + 1 where t.id = :id and t.nodeId = :node")
+    int finishRun(@Param("id") long id, @Param("node") String node, @Param("status") String status,
+                  @Param("outputDir") String outputDir, @Param("pages") Integer pages, @Param("assets") Integer assets,
+                  @Param("bytes") Long bytes, @Param("errors") Long errors, @Param("end") Instant end,
+                  @Param("message") String message);
+
+    // 续约：只延长本实例仍持有的租约，不递增版本；返回 0 表示租约已丢失（被接手或任务被取消）
+    @Modifying
+    @Transactional
+    @Query("update CrawlTaskEntity t set t.leaseUntil = :until where t.id = :id and t.nodeId = :node and t.status = :status")
+    int renewLease(@Param("id") long id, @Param("node") String node, @Param("status") String status, @Param("until") Instant until);
 }
@@ -0,0 +1,97 @@
+package com.example.sitecloner.service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个采集任务的后台资产下载池。
+ * 资产的本地路径在提交前已确定，页面可以先重写保存，实际下载交给这里的 worker；
+ * 队列有界，满时由提交线程自行执行（形成背压），任务只有在队列排空后才算完成。
+ */
+class AssetPipeline {
+
+    private final ThreadPoolExecutor executor;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Condition drained = drainLock.newCondition();
+    private int pending;
+
+    AssetPipeline(int workers, int queueSize, String threadPrefix, final CrawlContext ctx) {
+        int n = Math.max(1, workers);
+        final ThreadFactory threads = ctx.http.threads().factory(threadPrefix);
+        this.executor = new ThreadPoolExecutor(
+                n, n,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        return threads.newThread(new Runnable() {
+                            public void run() {
+                                CrawlContext.bind(ctx);
+                                try { r.run(); } finally { CrawlContext.unbind(); }
+                            }
+                        });
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+                        // 池已关闭：抛出异常由 submit 归还计数（CallerRunsPolicy 会静默丢弃，计数泄漏）
+                        if (e.isShutdown()) throw new RejectedExecutionException("资产池已关闭");
+                        // 队列满：由提交线程自行执行
+                        r.run();
+                    }
+                });
+    }
+
+    void submit(final Runnable job) {
+        drainLock.lock();
+        try { pending++; } finally { drainLock.unlock(); }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try { job.run(); } finally { finished(); }
+                }
+            });
+        } catch (RuntimeException ex) {
+            // 池已关闭（任务被取消），直接丢弃
+            finished();
+        }
+    }
+
+    private void finished() {
+        drainLock.lock();
+        try {
+            pending--;
+            if (pending == 0) drained.signalAll();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    // 等待所有已提交（包括下载过程中再派生）的资产完成
+    void awaitDrained() throws InterruptedException {
+        drainLock.lock();
+        try {
+            while (pending > 0) drained.await();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    int pending() {
+        drainLock.lock();
+        try { return pending; } finally { drainLock.unlock(); }
+    }
+
+    // 停止资产池：队列中尚未开始的下载不再执行，一并从计数中扣除
+    void shutdownNow() {
+        List<Runnable> dropped = executor.shutdownNow();
+        for (int i = 0; i < dropped.size(); i++) finished();
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.StorageProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按内容 SHA-256 寻址的文件库，所有克隆共享：&lt;outputBaseDir&gt;/.blobs/sha256/ab/cd/&lt;hash&gt;。
+ *
+ * 各克隆目录中的文件是库中文件的硬链接，同一份 jQuery、字体、logo 无论来自哪个 URL、哪个任务，
+ * 磁盘上只有一份；内容已在库中时写文件只需建一个链接，不再产生写 I/O。
+ * 因为共享 inode，写克隆文件一律“写临时文件再改名替换”，绝不原地覆盖（否则会改到其它克隆）。
+ * 文件系统不支持硬链接时（如跨盘、FAT）退化为普通文件，不去重；其它原因（权限、磁盘满等）的链接失败只影响当前文件。
+ * 链接数为 1 的库文件已无克隆引用，由 {@link #gc(boolean)} 回收。
+ */
+@Component
+public class BlobStore {
+
+    static final String DIR = ".blobs";
+
+    private final StorageProperties props;
+    private final AtomicLong linked = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+    private volatile boolean linkUnsupported;
+
+    public BlobStore(StorageProperties props) {
+        this.props = props;
+    }
+
+    private boolean enabled() {
+        return props.isBlobStoreEnabled() && !linkUnsupported;
+    }
+
+    private Path root() {
+        return Paths.get(CrawlService.sanitizePathConfig(props.getOutputBaseDir())).resolve(DIR).resolve("sha256");
+    }
+
+    private Path blobPath(String sha256) {
+        return root().resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * 以替换方式写入 target：内容已在库中时只建链接；否则写临时文件、改名到位后再登记入库。
+     * 返回内容的 SHA-256。
+     */
+    String write(byte[] bytes, Path target) throws IOException {
+        String sha256 = ValidatorStore.sha256Hex(bytes);
+        if (enabled() && linkExisting(sha256, target, bytes.length)) return sha256;
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = tempSibling(target, ".part");
+        try {
+            Files.write(tmp, bytes);
+            replace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        adopt(target, sha256);
+        return sha256;
+    }
+
+    /**
+     * target 已是完整写好的文件：内容已在库中则换成指向库文件的链接（释放这份副本），
+     * 否则把 target 登记为库文件（再建一个硬链接，不复制数据）。
+     */
+    void adopt(Path target, String sha256) {
+        if (!enabled() || sha256 == null) return;
+        try {
+            long size = Files.size(target);
+            if (linkExisting(sha256, target, size)) return;
+            Path blob = blobPath(sha256);
+            Files.createDirectories(blob.getParent());
+            try {
+                Files.createLink(blob, target);
+            } catch (FileAlreadyExistsException race) {
+                // 其它任务刚登记了同样的内容
+                linkExisting(sha256, target, size);
+            }
+        } catch (UnsupportedOperationException | IOException e) {
+            linkFailed(e, target);
+        }
+    }
+
+    // 库中已有同样内容时把 target 替换为它的硬链接；返回是否成功
+    private boolean linkExisting(String sha256, Path target, long size) {
+        Path blob = blobPath(sha256);
+        try {
+            if (!Files.isRegularFile(blob) || Files.size(blob) != size) return false;
+            if (Files.exists(target) && Files.isSameFile(blob, target)) return true;
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Path tmp = tempSibling(target, ".link");
+            try {
+                Files.createLink(tmp, blob);
+                replace(tmp, target);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            linked.incrementAndGet();
+            savedBytes.addAndGet(size);
+            return true;
+        } catch (NoSuchFileException gone) {
+            // 库文件恰好被回收：按新内容处理
+            return false;
+        } catch (UnsupportedOperationException | IOException e) {
+            linkFailed(e, target);
+            return false;
+        }
+    }
+
+    // 文件系统不支持硬链接时整个进程停用去重；其它失败只是这个文件按普通文件保存
+    private void linkFailed(Exception e, Path target) {
+        if (!linkingUnsupported(e)) {
+            System.out.println("[BLOB][LINK-FAIL] " + target + " -> " + e + "，该文件按普通文件保存");
+            return;
+        }
+        if (linkUnsupported) return;
+        linkUnsupported = true;
+        System.out.println("[BLOB][DISABLED] 无法创建硬链接，改为普通文件: " + e);
+    }
+
+    // 不支持硬链接（FAT 等）或库与克隆目录不在同一文件系统：换哪个文件都一样会失败
+    private static boolean linkingUnsupported(Exception e) {
+        if (e instanceof UnsupportedOperationException) return true;
+        if (!(e instanceof FileSystemException)) return false;
+        String reason = ((FileSystemException) e).getReason();
+        if (reason == null) return false;
+        reason = reason.toLowerCase(Locale.ROOT);
+        return reason.contains("cross-device") || reason.contains("different disk")
+                || reason.contains("not supported") || reason.contains("not permitted") || reason.contains("incorrect function");
+    }
+
+    private static Path tempSibling(Path target, String suffix) {
+        return target.toAbsolutePath().getParent()
+                .resolve("." + target.getFileName().toString() + "." + Long.toHexString(System.nanoTime()) + suffix);
+    }
+
+    // 改名替换目录项，不触碰原文件的 inode
+    private static void replace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    long linkedCount() {
+        return linked.get();
+    }
+
+    long savedBytes() {
+        return savedBytes.get();
+    }
+
+    /**
+     * 回收不再被任何克隆引用的库文件。支持 unix:nlink 时按链接数判断；
+     * 否则（如 Windows）遍历各克隆目录，对与库文件大小相同的文件计算哈希来标记引用。
+     * 须在没有采集任务运行时调用（包括共享同一输出目录的其它实例上的任务），否则刚入库、尚未链接的内容可能被误删。
+     */
+    public GcReport gc(boolean dryRun) throws IOException {
+        final GcReport report = new GcReport();
+        report.dryRun = dryRun;
+        final Path root = root();
+        if (!Files.isDirectory(root)) return report;
+        final List<Path> blobs = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) blobs.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        boolean nlink = root.getFileSystem().supportedFileAttributeViews().contains("unix");
+        Set<String> referenced = nlink ? null : markReferenced(blobs);
+        for (Path blob : blobs) {
+            report.blobs++;
+            long size = Files.size(blob);
+            boolean used = nlink
+                    ? ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() > 1
+                    : referenced.contains(blob.getFileName().toString());
+            if (used) continue;
+            report.unreferenced++;
+            report.freedBytes += size;
+            if (!dryRun) Files.deleteIfExists(blob);
+        }
+        if (!dryRun) removeEmptyDirs(root);
+        System.out.println("[BLOB][GC] blobs=" + report.blobs + ", unreferenced=" + report.unreferenced
+                + ", freedBytes=" + report.freedBytes + ", dryRun=" + dryRun + ", byNlink=" + nlink);
+        return report;
+    }
+
+    // 没有链接计数可用时：对各克隆中与库文件大小相同的文件计算哈希
+    private Set<String> markReferenced(List<Path> blobs) throws IOException {
+        final Map<Long, Set<String>> bySize = new HashMap<>();
+        for (Path blob : blobs) {
+            long size = Files.size(blob);
+            Set<String> names = bySize.get(size);
+            if (names == null) bySize.put(size, names = new HashSet<>());
+            names.add(blob.getFileName().toString());
+        }
+        final Set<String> referenced = new HashSet<>();
+        final Path base = root().getParent().getParent();
+        Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(base) && (name.equals(DIR) || name.equals(ValidatorStore.META_DIR))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Set<String> candidates = bySize.get(attrs.size());
+                if (candidates != null) {
+                    String hash = sha256Of(file);
+                    if (candidates.contains(hash)) referenced.add(hash);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return referenced;
+    }
+
+    private static String sha256Of(Path file) throws IOException {
+        MessageDigest md = ValidatorStore.newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), md)) {
+            byte[] buf = new byte[8192];
+            while (in.read(buf) != -1) { }
+        }
+        return ValidatorStore.toHex(md.digest());
+    }
+
+    private static void removeEmptyDirs(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (dir.equals(root)) return FileVisitResult.CONTINUE;
+                try (DirectoryStream<Path> s = Files.newDirectoryStream(dir)) {
+                    if (s.iterator().hasNext()) return FileVisitResult.CONTINUE;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public static final class GcReport {
+        private boolean dryRun;
+        private int blobs;
+        private int unreferenced;
+        private long freedBytes;
+
+        public boolean isDryRun() { return dryRun; }
+        public int getBlobs() { return blobs; }
+        public int getUnreferenced() { return unreferenced; }
+        public long getFreedBytes() { return freedBytes; }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlRequest;
+import com.example.sitecloner.model.CrawlResult;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个采集任务的预算：运行时长、下载字节数与网络请求数（取自请求，0 表示不限制）；不限制时也统计用量。
+ *
+ * 由任务的 {@link FetchSession} 在每次发出请求前检查并计数，响应体在读取时按块计入字节数，
+ * 因此页面、样式表、脚本与二进制资产的抓取都受同一份预算约束；缓存命中不计。字节数同时计入任务结果，供进度推送显示。
+ * 任一项首次用完时调用 onExhausted（停止发现新页面、断开在途请求），之后的请求直接以 {@link FetchRejectedException} 失败。
+ */
+class CrawlBudget {
+
+    private final long deadlineNanos;
+    private final long maxBytes;
+    private final long maxRequests;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final CrawlResult result;
+    private final Runnable onExhausted;
+    private volatile String exhausted;
+
+    CrawlBudget(CrawlRequest request, CrawlResult result, Runnable onExhausted) {
+        long seconds = request.getMaxDurationSeconds();
+        this.deadlineNanos = seconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds) : 0;
+        this.maxBytes = Math.max(0, request.getMaxTotalBytes());
+        this.maxRequests = Math.max(0, request.getMaxRequests());
+        this.result = result;
+        this.onExhausted = onExhausted;
+    }
+
+    // 用完的原因，未用完时为 null
+    String exhausted() {
+        return exhausted;
+    }
+
+    // 发出一次网络请求前调用：检查时长与请求数并计数
+    void beforeRequest() throws FetchRejectedException {
+        checkDeadline();
+        if (requests.incrementAndGet() > maxRequests && maxRequests > 0) {
+            exhaust("请求数已达上限 " + maxRequests);
+        }
+        String reason = exhausted;
+        if (reason != null) throw new FetchRejectedException("任务预算已用完（" + reason + "）");
+    }
+
+    // 计入读取到的响应体字节数
+    void addBytes(long n) throws FetchRejectedException {
+        result.addBytesDownloaded(n);
+        if (bytes.addAndGet(n) > maxBytes && maxBytes > 0) {
+            exhaust("下载字节数已达上限 " + maxBytes);
+        }
+        checkDeadline();
+        String reason = exhausted;
+        if (reason != null) throw new FetchRejectedException("任务预算已用完（" + reason + "）");
+    }
+
+    private void checkDeadline() {
+        if (deadlineNanos != 0 && exhausted == null && System.nanoTime() - deadlineNanos >= 0) {
+            exhaust("运行时长已达上限");
+        }
+    }
+
+    private void exhaust(String reason) {
+        synchronized (this) {
+            if (exhausted != null) return;
+            exhausted = reason;
+        }
+        System.out.println("[BUDGET][EXHAUSTED] " + reason + ", requests=" + requests.get() + ", bytes=" + bytes.get());
+        onExhausted.run();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    // 读取时按块计入字节数的响应体
+    InputStream meter(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) addBytes(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int r = super.read(b, off, len);
+                if (r > 0) addBytes(r);
+                return r;
+            }
+        };
+    }
+}
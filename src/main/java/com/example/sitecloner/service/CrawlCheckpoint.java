@@ -0,0 +1,197 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlResult;
+import com.example.sitecloner.model.FingerprintSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 采集断点：定期把前沿队列、已访问集合、已完成与待下载的资产以及计数写到 &lt;outputDir&gt;/.sitecloner/checkpoint，
+ * 任务被取消、进程被停止或崩溃后可从断点继续，已经落盘的页面与资源不再下载，尚在资产队列中的重新提交。
+ *
+ * 先完整写入 checkpoint.new，最后写 counters.properties 作为完成标记，再替换旧断点目录；
+ * 恢复时若 checkpoint 不存在但 checkpoint.new 已带完成标记，也可使用。
+ */
+class CrawlCheckpoint {
+
+    private static final String DIR = "checkpoint";
+    private static final String NEW_DIR = "checkpoint.new";
+    private static final String FRONTIER = "frontier.txt";
+    private static final String VISITED = "visited.bin";
+    private static final String ASSETS = "assets.bin";
+    private static final String PENDING_ASSETS = "pending-assets.txt";
+    private static final String PAGES = "pages.txt";
+    private static final String COUNTERS = "counters.properties";
+
+    private CrawlCheckpoint() {}
+
+    static void save(CrawlContext ctx) throws IOException {
+        Path meta = ctx.outputDir.resolve(ValidatorStore.META_DIR);
+        final Path tmp = meta.resolve(NEW_DIR);
+        deleteDir(tmp);
+        Files.createDirectories(tmp);
+        final CrawlResult result = ctx.result;
+        final Properties counters = new Properties();
+        try (BufferedWriter frontierOut = Files.newBufferedWriter(tmp.resolve(FRONTIER), StandardCharsets.UTF_8)) {
+            // 持有前沿锁期间写出已访问集合：进行中的页面不算已访问，恢复后会重新处理
+            ctx.frontier.checkpoint(frontierOut, new CrawlFrontier.CheckpointAction() {
+                public void run(List<String> activeUrls) throws IOException {
+                    Set<Long> exclude = new HashSet<>();
+                    for (String url : activeUrls) exclude.add(FingerprintSet.fingerprint(url));
+                    try (DataOutputStream out = dataOut(tmp.resolve(VISITED))) {
+                        ctx.visited.writeTo(out, exclude);
+                    }
+                    // 只计已处理完的页面，进行中的页面恢复后重新计数
+                    counters.setProperty("pagesDownloaded", String.valueOf(ctx.frontier.pagesUsed()));
+                }
+            });
+        }
+        // 先写待下载的再写已完成的：期间完成的资产会同时出现在两者中（续采时按已完成跳过），不会两头都漏掉
+        try (BufferedWriter w = Files.newBufferedWriter(tmp.resolve(PENDING_ASSETS), StandardCharsets.UTF_8)) {
+            for (CrawlContext.PendingAsset a : ctx.pendingAssets.values()) {
+                w.write((a.stylesheet ? "css" : "asset") + "\t" + a.uri + "\t" + (a.referer == null ? "-" : a.referer.toString())
+                        + "\t" + ctx.outputDir.relativize(a.local) + "\t" + a.errorPrefix);
+                w.newLine();
+            }
+        }
+        try (DataOutputStream out = dataOut(tmp.resolve(ASSETS))) {
+            // 只写下载完成的资产（本次完成的与断点中继承的），提交后尚未下载的在待下载列表中
+            ctx.completedAssets.writeTo(out, null);
+            ctx.resumedAssets.writeTo(out, null);
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(tmp.resolve(PAGES), StandardCharsets.UTF_8)) {
+            for (String page : result.getPages()) {
+                w.write(page);
+                w.newLine();
+            }
+        }
+        counters.setProperty("assetsDownloaded", String.valueOf(result.getAssetsDownloaded()));
+        counters.setProperty("notModified", String.valueOf(result.getNotModified()));
+        counters.setProperty("savedAt", String.valueOf(System.currentTimeMillis()));
+        try (OutputStream out = Files.newOutputStream(tmp.resolve(COUNTERS))) {
+            counters.store(out, "sitecloner checkpoint");
+        }
+        Path dir = meta.resolve(DIR);
+        deleteDir(dir);
+        Files.move(tmp, dir);
+    }
+
+    /**
+     * 从断点恢复到新建的任务上下文；没有可用断点时返回 false。
+     * 已下载完成的资产指纹放入 ctx.resumedAssets：本地文件仍在的直接跳过，缺失的重新下载；
+     * 断点时尚在资产队列中的放入 ctx.restoredAssets，由调用方重新提交（它们所在的页面已访问，不会再次发现）。
+     */
+    static boolean restore(CrawlContext ctx) {
+        Path meta = ctx.outputDir.resolve(ValidatorStore.META_DIR);
+        Path dir = meta.resolve(DIR);
+        if (!Files.exists(dir.resolve(COUNTERS))) {
+            dir = meta.resolve(NEW_DIR);
+            if (!Files.exists(dir.resolve(COUNTERS))) return false;
+        }
+        try {
+            Properties counters = new Properties();
+            try (InputStream in = Files.newInputStream(dir.resolve(COUNTERS))) {
+                counters.load(in);
+            }
+            try (DataInputStream in = dataIn(dir.resolve(VISITED))) {
+                ctx.visited.readFrom(in);
+            }
+            try (DataInputStream in = dataIn(dir.resolve(ASSETS))) {
+                ctx.resumedAssets.readFrom(in);
+                ctx.resumedAssets.readFrom(in);
+            }
+            Path pending = dir.resolve(PENDING_ASSETS);
+            if (Files.exists(pending)) {
+                for (String line : Files.readAllLines(pending, StandardCharsets.UTF_8)) {
+                    String[] f = line.split("\t", 5);
+                    if (f.length < 5) continue;
+                    try {
+                        ctx.restoredAssets.add(new CrawlContext.PendingAsset("css".equals(f[0]), new URI(f[1]),
+                                "-".equals(f[2]) ? null : new URI(f[2]), ctx.outputDir.resolve(f[3]), f[4]));
+                    } catch (Exception ignore) {}
+                }
+            }
+            for (String page : Files.readAllLines(dir.resolve(PAGES), StandardCharsets.UTF_8)) {
+                ctx.result.addPage(page);
+            }
+            int pages = intOf(counters, "pagesDownloaded");
+            ctx.result.setPagesDownloaded(pages);
+            ctx.result.setAssetsDownloaded(intOf(counters, "assetsDownloaded"));
+            ctx.result.setNotModified(intOf(counters, "notModified"));
+            ctx.frontier.restorePagesUsed(pages);
+            long queued = 0;
+            try (BufferedReader r = Files.newBufferedReader(dir.resolve(FRONTIER), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) continue;
+                    try {
+                        ctx.frontier.offer(new URI(line.substring(tab + 1)), Integer.parseInt(line.substring(0, tab)));
+                        queued++;
+                    } catch (Exception ignore) {}
+                }
+            }
+            System.out.println("[CHECKPOINT][RESTORE] pages=" + pages + ", visited=" + ctx.visited.size()
+                    + ", assets=" + ctx.resumedAssets.size() + ", pendingAssets=" + ctx.restoredAssets.size() + ", queued=" + queued + ", dir=" + dir);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[CHECKPOINT][RESTORE-FAIL] " + dir + " -> " + e + "，从头开始");
+            return false;
+        }
+    }
+
+    // 任务正常完成后删除断点
+    static void clear(Path outputDir) {
+        Path meta = outputDir.resolve(ValidatorStore.META_DIR);
+        try {
+            deleteDir(meta.resolve(DIR));
+            deleteDir(meta.resolve(NEW_DIR));
+        } catch (IOException ignore) {}
+    }
+
+    static boolean exists(Path outputDir) {
+        Path meta = outputDir.resolve(ValidatorStore.META_DIR);
+        return Files.exists(meta.resolve(DIR).resolve(COUNTERS)) || Files.exists(meta.resolve(NEW_DIR).resolve(COUNTERS));
+    }
+
+    private static int intOf(Properties p, String key) {
+        try {
+            return Integer.parseInt(p.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static DataOutputStream dataOut(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 65536));
+    }
+
+    private static DataInputStream dataIn(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 65536));
+    }
+
+    private static void deleteDir(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.deleteIfExists(f);
+        }
+        Files.deleteIfExists(dir);
+    }
+}
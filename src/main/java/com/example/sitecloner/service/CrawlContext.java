@@ -0,0 +1,135 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlRequest;
+import com.example.sitecloner.model.CrawlResult;
+import com.example.sitecloner.model.FingerprintSet;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单个采集任务的运行期状态，在该任务的所有页面 worker 与资产 worker 之间共享。
+ * 处理线程通过 {@link #bind} 绑定当前任务，深层的下载方法借助 {@link #current()} 取得它。
+ */
+class CrawlContext {
+
+    private static final ThreadLocal<CrawlContext> CURRENT = new ThreadLocal<>();
+
+    final URI startUri;
+    final String baseHost;
+    final CrawlRequest request;
+    final Path outputDir;
+    final CrawlResult result;
+    final CrawlFrontier frontier;
+    // 已访问页面的 URL 指纹
+    final FingerprintSet visited = new FingerprintSet();
+    final AssetPipeline assets;
+    final FetchSession http;
+    final UrlCanonicalizer canonicalizer;
+    // 增量采集的校验信息库，未开启时为 null
+    final ValidatorStore validators;
+    // 从断点恢复时，上次已下载资产的指纹；本地文件仍在的不再下载
+    final FingerprintSet resumedAssets = new FingerprintSet();
+    // 本次已下载完成（或确认未变化）的资产指纹，写入断点；result 中的去重集合在提交时就标记，含尚在队列中的
+    final FingerprintSet completedAssets = new FingerprintSet();
+    // 已提交、尚未完成的资产下载（规范化 URL -> 下载参数），写入断点，续采时重新提交
+    final ConcurrentHashMap<String, PendingAsset> pendingAssets = new ConcurrentHashMap<>();
+    // 从断点恢复的待下载资产，任务开始后重新提交
+    final List<PendingAsset> restoredAssets = new ArrayList<>();
+    // 站点 sitemap.xml 中列出的页面（规范化 URL 的指纹），供优先级前沿加分
+    final FingerprintSet sitemapUrls = new FingerprintSet();
+    // 近似重复检测，未开启时为 null
+    final NearDuplicateDetector duplicates;
+    // 爬虫陷阱防护，入队前检查
+    final CrawlTrapGuard traps;
+    // 时长/字节/请求数预算（同时统计用量），由 http 会话在每次请求时检查
+    final CrawlBudget budget;
+
+    private volatile boolean cancelled;
+
+    CrawlContext(URI startUri, String baseHost, CrawlRequest request, Path outputDir, CrawlResult result,
+                 FetchSession http, ValidatorStore validators, int frontierMemoryEntries) {
+        this.startUri = startUri;
+        this.baseHost = baseHost;
+        this.request = request;
+        this.outputDir = outputDir;
+        this.result = result;
+        this.http = http;
+        this.validators = validators;
+        this.canonicalizer = UrlCanonicalizer.forRequest(startUri, request);
+        this.duplicates = request.isSkipNearDuplicates() ? new NearDuplicateDetector(request.getNearDuplicateDistance()) : null;
+        this.traps = new CrawlTrapGuard(request);
+        this.budget = new CrawlBudget(request, result, new Runnable() {
+            public void run() {
+                budgetExhausted();
+            }
+        });
+        http.useBudget(budget);
+        // 同一站点的多个任务共用输出目录：段文件放在各自的子目录中，互不清理
+        Path frontierDir = outputDir.resolve(ValidatorStore.META_DIR).resolve("frontier").resolve(UUID.randomUUID().toString());
+        FrontierQueue queue = "fifo".equalsIgnoreCase(request.getFrontierStrategy())
+                ? new FifoFrontierQueue(frontierDir, frontierMemoryEntries)
+                : new PriorityFrontierQueue(frontierDir, frontierMemoryEntries, FrontierScorer.forRequest(request, sitemapUrls));
+        this.frontier = new CrawlFrontier(request.getMaxPages(), queue);
+        this.assets = new AssetPipeline(request.getAssetConcurrency(), request.getAssetQueueSize(),
+                Thread.currentThread().getName() + "-asset-", this);
+    }
+
+    static CrawlContext current() {
+        return CURRENT.get();
+    }
+
+    static void bind(CrawlContext ctx) {
+        CURRENT.set(ctx);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    boolean isCancelled() {
+        return cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    // 已取消或预算已用完：之后的请求失败是主动停止造成的，不记为错误
+    boolean isStopping() {
+        return isCancelled() || budget.exhausted() != null;
+    }
+
+    // 取消：不再取出新页面，停止资产池并断开在途请求，各 worker 在一秒内返回
+    void cancel() {
+        cancelled = true;
+        frontier.close();
+        assets.shutdownNow();
+        http.abortAll();
+    }
+
+    // 预算用完：按正常结束处理（不保留断点），已在途的请求一并断开
+    private void budgetExhausted() {
+        result.setBudgetExhausted(budget.exhausted());
+        result.addError("任务预算已用完（" + budget.exhausted() + "），停止采集");
+        frontier.close();
+        http.abortAll();
+    }
+
+    // 待下载的资产：stylesheet 为 true 时按样式表处理（重写其中的 url(...)）
+    static final class PendingAsset {
+        final boolean stylesheet;
+        final URI uri;
+        final URI referer;
+        final Path local;
+        final String errorPrefix;
+
+        PendingAsset(boolean stylesheet, URI uri, URI referer, Path local, String errorPrefix) {
+            this.stylesheet = stylesheet;
+            this.uri = uri;
+            this.referer = referer;
+            this.local = local;
+            this.errorPrefix = errorPrefix;
+        }
+    }
+}
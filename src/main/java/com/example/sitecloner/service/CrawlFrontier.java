@@ -0,0 +1,183 @@
+package com.example.sitecloner.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个采集任务内共享的前沿队列。
+ * 多个页面 worker 并发取出/加入条目，每个条目携带自己的深度；
+ * 同时负责页数预算：取出条目即预占一个页面名额，处理结束后按是否成功保存页面确认或归还。
+ * 条目存放在 {@link FrontierQueue} 中（先进先出或按评分优先），超出内存的部分落到磁盘。
+ * 使用 Lock/Condition 同步（虚拟线程模式下等待新链接的 worker 不会占住载体线程）。
+ */
+class CrawlFrontier {
+
+    static final class Entry {
+        final URI uri;
+        final int depth;
+
+        Entry(URI uri, int depth) {
+            this.uri = uri;
+            this.depth = depth;
+        }
+    }
+
+    private final FrontierQueue queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // 已取出但尚未处理完的条目，断点保存时需要一并写出
+    private final Set<Entry> active = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+    private final int pageBudget;
+    private int inFlight;
+    private int pagesUsed;
+    private boolean closed;
+
+    CrawlFrontier(int pageBudget, FrontierQueue queue) {
+        this.pageBudget = pageBudget;
+        this.queue = queue;
+    }
+
+    void offer(URI uri, int depth) {
+        lock.lock();
+        try {
+            if (closed) return;
+            queue.add(new Entry(uri, depth));
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出下一个待处理条目；队列为空时等待其它 worker 产出新链接。
+     * 返回 null 表示前沿已耗尽、页数预算已用完或已关闭。
+     */
+    Entry take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) return null;
+                if (!queue.isEmpty() && pagesUsed + inFlight < pageBudget) {
+                    Entry e = queue.poll();
+                    if (e == null) continue;
+                    inFlight++;
+                    active.add(e);
+                    return e;
+                }
+                // 没有进行中的页面：不会再有新链接，也不会有预占名额被归还
+                if (inFlight == 0) return null;
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 条目处理完毕；savedPage 为 true 时确认占用一个页面名额
+    void done(Entry entry, boolean savedPage) {
+        lock.lock();
+        try {
+            active.remove(entry);
+            inFlight--;
+            if (savedPage) pagesUsed++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 任务取消时未能完整处理（出链可能已被丢弃）的条目：不占名额，留在进行中集合里写入断点，续采时重新处理
+    void abandon(Entry entry) {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 任务结束后释放队列（删除磁盘上的段文件）
+    void discard() {
+        lock.lock();
+        try {
+            closed = true;
+            queue.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int pagesUsed() {
+        lock.lock();
+        try {
+            return pagesUsed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 断点续采：恢复已用掉的页面名额
+    void restorePagesUsed(int used) {
+        lock.lock();
+        try {
+            pagesUsed = Math.max(0, used);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 断点保存：在持有前沿锁期间（页面 worker 无法取出或完成条目）依次写出进行中的条目与排队条目，
+     * 然后执行 whileLocked，使写出的其它状态与队列保持一致。返回进行中条目的 URL。
+     */
+    List<String> checkpoint(BufferedWriter out, CheckpointAction whileLocked) throws IOException {
+        lock.lock();
+        try {
+            List<String> activeUrls = new ArrayList<>();
+            for (Entry e : active) {
+                out.write(e.depth + "\t" + e.uri.toString());
+                out.newLine();
+                activeUrls.add(e.uri.toString());
+            }
+            queue.writeTo(out);
+            out.flush();
+            whileLocked.run(activeUrls);
+            return activeUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    interface CheckpointAction {
+        void run(List<String> activeUrls) throws IOException;
+    }
+}
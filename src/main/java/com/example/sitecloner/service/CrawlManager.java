@@ -1,63 +1,160 @@
 package com.example.sitecloner.service;
 
+import com.example.sitecloner.config.TaskQueueProperties;
 import com.example.sitecloner.model.CrawlRequest;
 import com.example.sitecloner.model.CrawlResult;
 import com.example.sitecloner.model.CrawlTask;
 import com.example.sitecloner.model.CrawlTaskEntity;
+import com.example.sitecloner.model.ReplacementRule;
 import com.example.sitecloner.repo.CrawlTaskRepository;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * 采集任务的提交、排队与执行。
+ *
+ * 排队中的任务就是 crawl_task 表中状态为“未开始”的行：提交只负责准入检查与写库，服务重启不会丢失排队任务。
+ * 调度线程在有空闲 worker 时按优先级（同优先级按提交先后）取出任务，以条件更新把状态改为“采集中”完成认领，
+ * 并遵守每租户同时运行数上限；任务结束或有新提交时立即唤醒调度线程，否则按 pollIntervalMillis 轮询。
+ *
+ * 多个实例可共享同一张表：认领时写入本实例标识与租约到期时间，执行期间按 heartbeatSeconds 续约；
+ * 实例宕机后租约过期，其它实例的调度线程接手该任务并从断点续采（需共用输出根目录）。
+ * 续约失败说明任务已被接手或在其它实例上被取消，本实例随即中断执行且不再写回结果。
+ * 执行期间不保存整行：开始与结束各一次只更新相关列的语句，进度与错误由 {@link TaskProgressWriter} 按间隔批量写回。
+ * 租约比较使用各实例的本地时钟，实例间需要时间同步。
+ *
+ * 内存中只保存排队、运行中与最近结束的任务：任务结束后结果对象换成快照，超过 finishedTaskTtlSeconds
+ * 或已结束任务数超过 maxFinishedTasks 时从内存移除，之后的查询与分页列表都从数据库读取。
+ */
 @Service
 public class CrawlManager {
+    static final String QUEUED = "未开始";
+    static final String RUNNING = "采集中";
+    private static final String CANCELLED = "已取消";
+    private static final String INTERRUPTED = "已中断";
+    private static final String DEFAULT_TENANT = "default";
+    // 可以续采的状态：排队中与采集中的任务不能重新排队，否则同一输出目录可能被两个实例同时写入
+    private static final List<String> RESUMABLE = Arrays.asList(CANCELLED, INTERRUPTED, "采集失败", "采集完成");
+    // 每次调度最多查看的队头任务数（跳过租户已满的任务后从中选一个）
+    private static final int DISPATCH_SCAN = 50;
+
     private final CrawlService crawlService;
     private final CrawlTaskRepository repo;
+    private final TaskQueueProperties queueProps;
+    private final JdbcTemplate jdbc;
+    private final PlatformTransactionManager txManager;
+    private TaskProgressWriter progress;
     private ExecutorService executor;
+    private int workers;
+    // 空闲 worker 名额，调度线程取得名额后才出队
+    private Semaphore slots;
+    private Thread dispatcher;
+    private final Object wakeup = new Object();
+    private volatile boolean stopping;
+    private String nodeId;
+    // 续约单独一个线程，不受进度写回与内存清理（可能因数据库慢而耗时）的影响，避免租约过期被其它实例接手
+    private ScheduledExecutorService heartbeat;
+    private ScheduledExecutorService housekeeping;
+    // 本实例持有租约的任务：任务 ID -> 行 ID
+    private final ConcurrentHashMap<String, Long> leased = new ConcurrentHashMap<String, Long>();
+    // 租约已被其它实例接手的任务，结束时不再写回
+    private final Set<String> lostLeases = ConcurrentHashMap.newKeySet();
+    // 执行中任务的结果对象，取消时据此断开在途请求
+    private final ConcurrentHashMap<String, CrawlResult> live = new ConcurrentHashMap<String, CrawlResult>();
+    // 本实例排队、运行中与最近结束的任务（已结束的按保留时长与个数清理）
     private final ConcurrentHashMap<String, CrawlTask> tasks = new ConcurrentHashMap<String, CrawlTask>();
     private final ConcurrentHashMap<String, Future<?>> futures = new ConcurrentHashMap<String, Future<?>>();
+    // 旧版本保存的参数里可能有已删除的字段，反序列化时忽略
+    private final ObjectMapper json = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
-    public CrawlManager(CrawlService crawlService, CrawlTaskRepository repo) {
+    public CrawlManager(CrawlService crawlService, CrawlTaskRepository repo, TaskQueueProperties queueProps, JdbcTemplate jdbc,
+                        PlatformTransactionManager txManager) {
         this.crawlService = crawlService;
         this.repo = repo;
+        this.queueProps = queueProps;
+        this.jdbc = jdbc;
+        this.txManager = txManager;
     }
 
     @PostConstruct
     public void init() {
-        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        String configured = queueProps.getNodeId();
+        this.nodeId = configured != null && !configured.trim().isEmpty()
+                ? configured.trim() : ManagementFactory.getRuntimeMXBean().getName();
+        this.progress = new TaskProgressWriter(jdbc, new TransactionTemplate(txManager), nodeId);
+        CrawlThreads threads = crawlService.threads();
+        // 采集任务大部分时间阻塞在网络 I/O 上：虚拟线程模式下默认运行数放宽到核数 × 16，在途请求数由主机限流与全局连接数上限约束
+        int cpus = Runtime.getRuntime().availableProcessors();
+        this.workers = queueProps.getWorkers() > 0
+                ? queueProps.getWorkers() : threads.isVirtual() ? cpus * 16 : Math.max(2, cpus / 2);
+        this.slots = new Semaphore(workers);
+        // 调度线程只在有空闲名额时提交，执行器的队列不会积压采集任务
         this.executor = new ThreadPoolExecutor(
-                threads, threads,
+                workers, workers,
                 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(100),
-                new ThreadFactory() {
-                    private final ThreadFactory df = Executors.defaultThreadFactory();
-                    public Thread newThread(Runnable r) {
-                        Thread t = df.newThread(r);
-                        t.setName("site-crawler-" + t.getId());
-                        t.setDaemon(true);
-                        return t;
-                    }
-                },
-                new ThreadPoolExecutor.AbortPolicy());
+                new LinkedBlockingQueue<Runnable>(),
+                threads.factory("site-crawler-"));
     }
 
     @PreDestroy
     public void shutdown() {
-        if (executor != null) executor.shutdownNow();
+        stopping = true;
+        if (dispatcher != null) dispatcher.interrupt();
+        if (heartbeat != null) heartbeat.shutdownNow();
+        if (housekeeping != null) housekeeping.shutdownNow();
+        if (executor == null) return;
+        executor.shutdownNow();
+        for (CrawlResult r : live.values()) crawlService.abort(r);
+        // 给被中断的任务一点时间写入断点与“已中断”状态
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
     }
 
+    /**
+     * 提交任务：通过准入检查后写入队列表（状态“未开始”）并唤醒调度线程。
+     * 排队总数或该租户排队数已达上限时抛出 {@link TaskRejectedException}。
+     */
     public CrawlTask submit(CrawlRequest request) {
+        String tenant = tenantOf(request.getTenant());
+        admit(tenant);
         final CrawlTask task = new CrawlTask(request);
-        tasks.put(task.getId(), task);
-        // 持久化初始任务（未开始）
         final CrawlTaskEntity entity = new CrawlTaskEntity();
         entity.setTaskUuid(task.getId());
-        entity.setStatus("未开始");
+        entity.setStatus(QUEUED);
+        entity.setPriority(request.getPriority());
+        entity.setTenant(tenant);
+        entity.setResumeRequested(false);
         entity.setStartUrl(request.getStartUrl());
         entity.setSameDomain(request.isSameDomain());
         entity.setMaxPages(request.getMaxPages());
@@ -69,37 +166,403 @@ public class CrawlManager {
         // 以 JSON 形式保存替换规则
         if (request.getReplaceRules() != null) {
             try {
-                com.fasterxml.jackson.databind.ObjectMapper om = new com.fasterxml.jackson.databind.ObjectMapper();
-                entity.setReplaceRulesJson(om.writeValueAsString(request.getReplaceRules()));
+                entity.setReplaceRulesJson(json.writeValueAsString(request.getReplaceRules()));
             } catch (Exception ignore) {}
         }
-        repo.save(entity);
+        try {
+            entity.setRequestJson(json.writeValueAsString(request));
+        } catch (Exception ignore) {}
+        tasks.put(task.getId(), task);
+        persist(entity);
+        System.out.println("[QUEUE][SUBMIT] id=" + task.getId() + ", priority=" + request.getPriority() + ", tenant=" + tenant);
+        wake();
+        return task;
+    }
 
-        Future<?> f = executor.submit(new Runnable() {
+    // 准入控制：计数与写库之间不加锁，并发提交时可能略超上限
+    private void admit(String tenant) {
+        long queued = repo.countByStatus(QUEUED);
+        if (queued >= queueProps.getMaxQueued()) {
+            throw new TaskRejectedException("排队任务已达上限 " + queueProps.getMaxQueued() + "，请稍后再提交");
+        }
+        if (repo.countByStatusAndTenant(QUEUED, tenant) >= queueProps.getMaxQueuedPerTenant()) {
+            throw new TaskRejectedException("租户 " + tenant + " 的排队任务已达上限 " + queueProps.getMaxQueuedPerTenant());
+        }
+    }
+
+    private static String tenantOf(String tenant) {
+        return tenant == null || tenant.trim().isEmpty() ? DEFAULT_TENANT : tenant.trim();
+    }
+
+    /**
+     * 任务的排队情况：状态、队列长度、前面还有几个任务，以及按最近完成任务的平均耗时估算的等待秒数（无历史数据时不给出）。
+     */
+    public Map<String, Object> queueStatus(String id) {
+        Map<String, Object> out = new LinkedHashMap<String, Object>();
+        out.put("id", id);
+        CrawlTaskEntity e = repo.findByTaskUuid(id);
+        if (e == null) return out;
+        long depth = repo.countByStatus(QUEUED);
+        int running = workers - slots.availablePermits();
+        out.put("status", e.getStatus());
+        out.put("queueDepth", depth);
+        out.put("running", running);
+        out.put("workers", workers);
+        if (QUEUED.equals(e.getStatus())) {
+            int priority = e.getPriority() == null ? 0 : e.getPriority();
+            long ahead = repo.countAhead(QUEUED, priority, e.getId());
+            out.put("position", ahead + 1);
+            Long avg = averageTaskSeconds();
+            if (avg != null) {
+                long free = Math.max(0, workers - running);
+                long rounds = ahead < free ? 0 : (ahead - free) / workers + 1;
+                out.put("estimatedWaitSeconds", rounds * avg);
+            }
+        }
+        return out;
+    }
+
+    private Long averageTaskSeconds() {
+        long total = 0;
+        int n = 0;
+        for (CrawlTaskEntity done : repo.findTop20ByStatusOrderByEndTimeDesc("采集完成")) {
+            if (done.getStartTime() == null || done.getEndTime() == null) continue;
+            total += Duration.between(done.getStartTime(), done.getEndTime()).getSeconds();
+            n++;
+        }
+        return n == 0 ? null : total / n;
+    }
+
+    /**
+     * 续采被取消、中断（服务停止）、失败或已完成的任务：重新排队，出队后输出目录下有断点时从断点继续，否则从头开始。
+     * 任务正在排队或运行（包括在其它实例上运行）时抛出 IllegalStateException，任务不存在时返回 null。
+     */
+    public CrawlTask resume(String id) {
+        Future<?> running = futures.get(id);
+        if (running != null && !running.isDone()) {
+            throw new IllegalStateException("任务仍在运行: " + id);
+        }
+        CrawlTaskEntity entity = repo.findByTaskUuid(id);
+        if (entity == null) return null;
+        CrawlTask task = requeue(entity, RESUMABLE);
+        if (task == null) throw new IllegalStateException("任务正在排队或运行中: " + id);
+        System.out.println("[TASK][RESUME] id=" + id + ", startUrl=" + task.getRequest().getStartUrl());
+        wake();
+        return task;
+    }
+
+    // 以条件更新重新排队：行的状态已不在 from 之中（被其它实例认领、续采）或已取消但执行它的实例尚未结束时不做改动并返回 null
+    private CrawlTask requeue(CrawlTaskEntity entity, Collection<String> from) {
+        if (repo.requeue(entity.getId(), from, QUEUED, nodeId, Instant.now()) == 0) return null;
+        String id = entity.getTaskUuid();
+        CrawlTask task = new CrawlTask(id, requestOf(entity));
+        tasks.put(id, task);
+        return task;
+    }
+
+    /**
+     * 服务启动后：被中断的任务与本实例上次运行中的任务重新排队（仅限保存了完整参数的任务），没有参数也没有租约的运行中任务记为已中断，排队中的任务原样保留，
+     * 然后启动调度线程与续约。其它实例运行中的任务不动，若其实例已停止，租约过期后由调度线程接手。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        System.out.println("[QUEUE][NODE] id=" + nodeId + ", workers=" + workers + ", threads=" + (crawlService.threads().isVirtual() ? "virtual" : "platform"));
+        try {
+            for (CrawlTaskEntity e : repo.findByStatusIn(Arrays.asList(RUNNING, INTERRUPTED))) {
+                boolean replayable = e.getRequestJson() != null && !e.getRequestJson().isEmpty();
+                boolean running = RUNNING.equals(e.getStatus());
+                if (running && e.getLeaseUntil() != null && !nodeId.equals(e.getNodeId())) continue;
+                try {
+                    if (!replayable) {
+                        // 没有完整参数也没有租约的运行中行（模拟任务、升级前的任务）无法恢复，记为已中断
+                        if (running && e.getLeaseUntil() == null && repo.transition(e.getId(), RUNNING, INTERRUPTED) > 0) {
+                            System.out.println("[TASK][ORPHAN] id=" + e.getTaskUuid() + "，记为已中断");
+                        }
+                        continue;
+                    }
+                    if (requeue(e, Arrays.asList(RUNNING, INTERRUPTED)) == null) continue;
+                    System.out.println("[TASK][RESUME] id=" + e.getTaskUuid() + ", startUrl=" + e.getStartUrl());
+                } catch (Exception ex) {
+                    System.out.println("[TASK][RESUME-FAIL] id=" + e.getTaskUuid() + " -> " + ex.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("[TASK][RESUME-SCAN-FAIL] " + e.getMessage());
+        }
+        startDispatcher();
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher != null) return;
+        heartbeat = daemonScheduler("crawl-lease-heartbeat");
+        housekeeping = daemonScheduler("crawl-housekeeping");
+        long interval = Math.max(1, queueProps.getHeartbeatSeconds());
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
             public void run() {
+                renewLeases();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        long flush = Math.max(1, queueProps.getProgressFlushSeconds());
+        housekeeping.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                progress.flush();
+            }
+        }, flush, flush, TimeUnit.SECONDS);
+        housekeeping.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictFinished();
+            }
+        }, 60, 60, TimeUnit.SECONDS);
+        dispatcher = new Thread(new Runnable() {
+            public void run() {
+                dispatchLoop();
+            }
+        }, "crawl-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private static ScheduledExecutorService daemonScheduler(final String name) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private void dispatchLoop() {
+        while (!stopping) {
+            try {
+                slots.acquire();
+                boolean dispatched = false;
+                try {
+                    dispatched = dispatchNext();
+                } finally {
+                    if (!dispatched) slots.release();
+                }
+                if (!dispatched) awaitWork();
+            } catch (InterruptedException ie) {
+                return;
+            } catch (Exception ex) {
+                // 数据库暂时不可用等：稍后重试
+                System.out.println("[QUEUE][DISPATCH-FAIL] " + ex);
+                try { awaitWork(); } catch (InterruptedException ie) { return; }
+            }
+        }
+    }
+
+    // 接手一个租约过期的任务或认领一个排队任务并启动；没有可执行的任务时返回 false
+    private boolean dispatchNext() {
+        Instant now = Instant.now();
+        // 先接手租约过期的任务：它已计入所属租户的运行数，不再检查租户上限
+        for (CrawlTaskEntity e : repo.findExpired(RUNNING, now, PageRequest.of(0, DISPATCH_SCAN))) {
+            if (repo.reclaim(e.getId(), RUNNING, nodeId, leaseEnd(), now) == 0) continue;
+            System.out.println("[LEASE][RECLAIM] id=" + e.getTaskUuid() + ", previousNode=" + e.getNodeId()
+                    + ", expiredAt=" + e.getLeaseUntil());
+            if (e.getRequestJson() == null || e.getRequestJson().isEmpty()) {
+                // 模拟任务没有可重放的参数：所属实例已停止，记为已中断而不是按表格字段当作真实任务重跑
+                repo.transition(e.getId(), RUNNING, INTERRUPTED);
+                continue;
+            }
+            if (launch(e.getId())) return true;
+        }
+        Map<String, Long> runningByTenant = new HashMap<String, Long>();
+        for (CrawlTaskEntity e : repo.findQueue(QUEUED, PageRequest.of(0, DISPATCH_SCAN))) {
+            String tenant = tenantOf(e.getTenant());
+            if (!tenantHasRoom(tenant, runningByTenant)) continue;
+            // 条件更新认领：已被其它实例认领或期间被取消的任务不会再启动
+            if (repo.claim(e.getId(), QUEUED, RUNNING, nodeId, leaseEnd()) == 0) continue;
+            System.out.println("[QUEUE][DISPATCH] id=" + e.getTaskUuid() + ", priority=" + e.getPriority() + ", tenant=" + tenant
+                    + ", node=" + nodeId);
+            if (launch(e.getId())) return true;
+        }
+        return false;
+    }
+
+    // 每租户运行数按全部实例统计；多个实例同时认领时可能略超上限
+    private boolean tenantHasRoom(String tenant, Map<String, Long> runningByTenant) {
+        int max = queueProps.getMaxRunningPerTenant();
+        if (max <= 0) return true;
+        Long running = runningByTenant.get(tenant);
+        if (running == null) runningByTenant.put(tenant, running = repo.countByStatusAndTenant(RUNNING, tenant));
+        return running < max;
+    }
+
+    private Instant leaseEnd() {
+        return Instant.now().plusSeconds(Math.max(1, queueProps.getLeaseSeconds()));
+    }
+
+    // 认领成功后重新读取整行（版本已递增）并在 worker 上启动
+    private boolean launch(long rowId) {
+        CrawlTaskEntity e = repo.findById(rowId).orElse(null);
+        if (e == null) return false;
+        CrawlTask task = tasks.get(e.getTaskUuid());
+        if (task == null || task.getStatus() != CrawlTask.Status.QUEUED) {
+            // 重启前或其它实例提交的任务、接手的任务
+            task = new CrawlTask(e.getTaskUuid(), requestOf(e));
+            tasks.put(task.getId(), task);
+        }
+        task.setNode(nodeId);
+        leased.put(task.getId(), rowId);
+        start(task, e, Boolean.TRUE.equals(e.getResumeRequested()));
+        return true;
+    }
+
+    // 为本实例执行中的任务续约；续约失败说明租约已丢失
+    private void renewLeases() {
+        Instant until = leaseEnd();
+        for (Map.Entry<String, Long> l : leased.entrySet()) {
+            try {
+                if (repo.renewLease(l.getValue(), nodeId, RUNNING, until) == 0) leaseLost(l.getKey());
+            } catch (Exception ex) {
+                System.out.println("[LEASE][RENEW-FAIL] id=" + l.getKey() + " -> " + ex.getMessage());
+            }
+        }
+    }
+
+    private void leaseLost(String id) {
+        if (leased.remove(id) == null) return;
+        CrawlTaskEntity e = repo.findByTaskUuid(id);
+        CrawlTask t = tasks.get(id);
+        if (e != null && CANCELLED.equals(e.getStatus()) && nodeId.equals(e.getNodeId())) {
+            // 在其它实例上被取消：按用户取消处理，结束时仍写回已完成部分的统计
+            System.out.println("[TASK][CANCEL-REMOTE] id=" + id);
+            if (t != null) t.setStatus(CrawlTask.Status.CANCELLED);
+        } else {
+            System.out.println("[LEASE][LOST] id=" + id + ", owner=" + (e == null ? null : e.getNodeId()) + "，停止执行");
+            lostLeases.add(id);
+        }
+        interrupt(id, futures.get(id));
+    }
+
+    // 中断采集线程并断开该任务的在途请求；只中断线程时，阻塞在套接字读取上的下载要等到超时才会返回
+    private boolean interrupt(String id, Future<?> f) {
+        boolean ok = f != null && f.cancel(true);
+        crawlService.abort(live.get(id));
+        return ok;
+    }
+
+    // 保存整行并同步版本号，同一实体对象可以多次保存
+    private CrawlTaskEntity persist(CrawlTaskEntity e) {
+        CrawlTaskEntity saved = repo.save(e);
+        e.setId(saved.getId());
+        e.setVersion(saved.getVersion());
+        return e;
+    }
+
+    /**
+     * 任务结束时写入剩余的错误，再以一条条件更新写回状态与统计（期间被取消但仍归本实例时照常写回）；
+     * 租约已被其它实例接手时放弃写回。
+     */
+    private void finish(CrawlTaskEntity entity, String id) {
+        leased.remove(id);
+        boolean lost = lostLeases.remove(id);
+        progress.untrack(id, !lost);
+        if (lost) {
+            System.out.println("[LEASE][SKIP-WRITE] id=" + id);
+            return;
+        }
+        int updated = repo.finishRun(entity.getId(), nodeId, entity.getStatus(), entity.getOutputDir(),
+                entity.getPagesDownloaded(), entity.getAssetsDownloaded(), entity.getBytesDownloaded(), entity.getErrorCount(),
+                entity.getEndTime(), entity.getErrorMessage());
+        if (updated == 0) System.out.println("[LEASE][SKIP-WRITE] id=" + id + "，任务已由其它实例接手");
+    }
+
+    private void awaitWork() throws InterruptedException {
+        synchronized (wakeup) {
+            wakeup.wait(Math.max(100, queueProps.getPollIntervalMillis()));
+        }
+    }
+
+    private void wake() {
+        synchronized (wakeup) {
+            wakeup.notifyAll();
+        }
+    }
+
+    private CrawlRequest requestOf(CrawlTaskEntity entity) {
+        if (entity.getRequestJson() != null && !entity.getRequestJson().isEmpty()) {
+            try {
+                return json.readValue(entity.getRequestJson(), CrawlRequest.class);
+            } catch (Exception ex) {
+                System.out.println("[TASK][REQUEST-JSON-FAIL] id=" + entity.getTaskUuid() + " -> " + ex.getMessage());
+            }
+        }
+        // 早期任务没有完整参数：按表格字段重建
+        CrawlRequest request = new CrawlRequest();
+        request.setStartUrl(entity.getStartUrl());
+        if (entity.getSameDomain() != null) request.setSameDomain(entity.getSameDomain());
+        if (entity.getMaxPages() != null) request.setMaxPages(entity.getMaxPages());
+        if (entity.getMaxDepth() != null) request.setMaxDepth(entity.getMaxDepth());
+        if (entity.getDebugOnlyHome() != null) request.setDebugOnlyHome(entity.getDebugOnlyHome());
+        request.setOutputName(entity.getOutputName());
+        request.setTitleSuffix(entity.getTitleSuffix());
+        request.setSitemapDomain(entity.getSitemapDomain());
+        if (entity.getReplaceRulesJson() != null) {
+            try {
+                request.setReplaceRules(Arrays.asList(json.readValue(entity.getReplaceRulesJson(), ReplacementRule[].class)));
+            } catch (Exception ignore) {}
+        }
+        return request;
+    }
+
+    // 在 worker 上执行已认领的任务，结束后归还名额并唤醒调度线程
+    private void start(final CrawlTask task, final CrawlTaskEntity entity, final boolean resume) {
+        final CrawlRequest request = task.getRequest();
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean slotHeld = new AtomicBoolean(true);
+        final Runnable releaseSlot = new Runnable() {
+            public void run() {
+                if (!slotHeld.compareAndSet(true, false)) return;
+                leased.remove(task.getId());
+                slots.release();
+                wake();
+            }
+        };
+        FutureTask<Void> f = new FutureTask<Void>(new Runnable() {
+            public void run() {
+                started.set(true);
                 task.setStatus(CrawlTask.Status.RUNNING);
                 task.setStartTime(Instant.now());
                 task.setThreadName(Thread.currentThread().getName());
                 try {
-                    entity.setStatus("采集中");
+                    entity.setStatus(RUNNING);
                     entity.setStartTime(task.getStartTime());
                     entity.setThreadName(task.getThreadName());
-                    repo.save(entity);
+                    repo.markStarted(entity.getId(), nodeId, entity.getStartTime(), entity.getThreadName());
 
-                    CrawlResult result = crawlService.crawl(request);
+                    CrawlResult result = new CrawlResult();
                     task.setResult(result);
-                    task.setStatus(CrawlTask.Status.SUCCEEDED);
-
-                    entity.setStatus("采集完成");
+                    live.put(task.getId(), result);
+                    progress.track(task.getId(), entity.getId(), result);
+                    try {
+                        crawlService.crawl(request, resume, result);
+                    } finally {
+                        live.remove(task.getId());
+                    }
+                    if (!result.isCancelled()) {
+                        task.setStatus(CrawlTask.Status.SUCCEEDED);
+                        entity.setStatus("采集完成");
+                    } else if (task.getStatus() == CrawlTask.Status.CANCELLED) {
+                        entity.setStatus(CANCELLED);
+                    } else {
+                        // 非用户取消（服务停止等）：保留断点，启动后自动续采
+                        task.setStatus(CrawlTask.Status.INTERRUPTED);
+                        entity.setStatus(INTERRUPTED);
+                    }
                     entity.setOutputDir(result.getOutputDirectory());
                     entity.setPagesDownloaded((int) result.getPagesDownloaded());
                     entity.setAssetsDownloaded((int) result.getAssetsDownloaded());
+                    entity.setBytesDownloaded(result.getBytesDownloaded());
+                    entity.setErrorCount(result.getErrorCount());
                     entity.setEndTime(Instant.now());
-                    entity.setErrorMessage(null);
-                    if (result.getErrors() != null && !result.getErrors().isEmpty()) {
-                        entity.setErrorsJson(String.join("\n", result.getErrors()));
-                    }
-                    repo.save(entity);
+                    // 预算用完按完成处理，原因记在错误信息里
+                    String budget = result.getBudgetExhausted() == null ? null : "任务预算已用完：" + result.getBudgetExhausted();
+                    task.setErrorMessage(budget);
+                    entity.setErrorMessage(budget);
+                    finish(entity, task.getId());
                 } catch (Throwable ex) {
                     task.setErrorMessage(ex.getMessage());
                     task.setStatus(CrawlTask.Status.FAILED);
@@ -107,30 +570,65 @@ public class CrawlManager {
                     entity.setStatus("采集失败");
                     entity.setEndTime(Instant.now());
                     entity.setErrorMessage(ex.getMessage());
-                    repo.save(entity);
+                    CrawlResult.Snapshot partial = task.getResult();
+                    if (partial != null) {
+                        entity.setPagesDownloaded((int) partial.getPagesDownloaded());
+                        entity.setAssetsDownloaded((int) partial.getAssetsDownloaded());
+                        entity.setBytesDownloaded(partial.getBytesDownloaded());
+                        entity.setErrorCount(partial.getErrorCount());
+                    }
+                    try {
+                        finish(entity, task.getId());
+                    } catch (Exception saveEx) {
+                        System.out.println("[TASK][SAVE-FAIL] id=" + task.getId() + " -> " + saveEx.getMessage());
+                    }
                 } finally {
                     task.setEndTime(Instant.now());
+                    task.freezeResult();
+                    releaseSlot.run();
+                    evictFinished();
                 }
             }
-        });
+        }, null) {
+            @Override
+            protected void done() {
+                // 还没开始执行就被取消：run 不会再执行，在这里归还名额
+                if (isCancelled() && !started.get()) releaseSlot.run();
+            }
+        };
         futures.put(task.getId(), f);
-        return task;
+        executor.execute(f);
     }
 
     public boolean cancel(String id) {
+        // 尚在排队：直接从队列中取消
+        CrawlTaskEntity queued = repo.findByTaskUuid(id);
+        if (queued != null && QUEUED.equals(queued.getStatus()) && repo.transition(queued.getId(), QUEUED, CANCELLED) == 1) {
+            CrawlTask t = tasks.get(id);
+            if (t != null) {
+                t.setStatus(CrawlTask.Status.CANCELLED);
+                t.setEndTime(Instant.now());
+            }
+            System.out.println("[QUEUE][CANCEL] id=" + id);
+            return true;
+        }
         Future<?> f = futures.get(id);
-        if (f == null) return false;
-        boolean ok = f.cancel(true);
-        try {
-            CrawlTaskEntity e = repo.findByTaskUuid(id);
-            if (e != null) {
-                e.setStatus("已取消");
-                e.setEndTime(Instant.now());
-                repo.save(e);
+        if (f == null) {
+            // 在其它实例上运行：改为已取消，执行它的实例续约失败后停止
+            if (queued != null && RUNNING.equals(queued.getStatus()) && queued.getLeaseUntil() != null
+                    && repo.transition(queued.getId(), RUNNING, CANCELLED) == 1) {
+                System.out.println("[TASK][CANCEL] id=" + id + ", node=" + queued.getNodeId());
+                return true;
             }
-        } catch (Exception ignore) {}
+            return false;
+        }
+        // 先标记为用户取消，再中断采集线程；断点会保留，可通过 resume 继续
         CrawlTask t = tasks.get(id);
-        if (t != null) t.setStatus(CrawlTask.Status.FAILED);
+        if (t != null && !f.isDone()) t.setStatus(CrawlTask.Status.CANCELLED);
+        boolean ok = interrupt(id, f);
+        try {
+            if (queued != null) repo.transition(queued.getId(), RUNNING, CANCELLED);
+        } catch (Exception ignore) {}
         return ok;
     }
 
@@ -138,7 +636,11 @@ public class CrawlManager {
         final String uuid = java.util.UUID.randomUUID().toString();
         final com.example.sitecloner.model.CrawlTaskEntity entity = new com.example.sitecloner.model.CrawlTaskEntity();
         entity.setTaskUuid(uuid);
-        entity.setStatus("未开始");
+        // 模拟任务直接在 worker 上运行，不经过队列表（写成“未开始”会被调度线程当作真实任务认领）；
+        // 与真实任务一样归本实例并持有租约，实例停止后租约过期即可被识别为已中断
+        entity.setStatus(RUNNING);
+        entity.setNodeId(nodeId);
+        entity.setLeaseUntil(leaseEnd());
         entity.setStartUrl(form.getStartUrl());
         entity.setSameDomain(form.isSameDomain());
         entity.setMaxPages(form.getMaxPages());
@@ -153,7 +655,8 @@ public class CrawlManager {
                 entity.setReplaceRulesJson(om.writeValueAsString(form.getReplaceRules()));
             } catch (Exception ignore) {}
         }
-        repo.save(entity);
+        persist(entity);
+        leased.put(uuid, entity.getId());
 
         Future<?> f = executor.submit(new Runnable() {
             public void run() {
@@ -161,16 +664,18 @@ public class CrawlManager {
                     entity.setStatus("采集中");
                     entity.setStartTime(java.time.Instant.now());
                     entity.setThreadName(Thread.currentThread().getName());
-                    repo.save(entity);
+                    persist(entity);
                     try { Thread.sleep(20000L); } catch (InterruptedException ignored) {}
+                    leased.remove(uuid);
                     entity.setStatus("采集完成");
                     entity.setEndTime(java.time.Instant.now());
-                    repo.save(entity);
+                    persist(entity);
                 } catch (Throwable ex) {
+                    leased.remove(uuid);
                     entity.setStatus("采集失败");
                     entity.setErrorMessage(ex.getMessage());
                     entity.setEndTime(java.time.Instant.now());
-                    repo.save(entity);
+                    persist(entity);
                 }
             }
         });
@@ -182,9 +687,12 @@ public class CrawlManager {
         final String uuid = java.util.UUID.randomUUID().toString();
         final com.example.sitecloner.model.CrawlTaskEntity entity = new com.example.sitecloner.model.CrawlTaskEntity();
         entity.setTaskUuid(uuid);
-        entity.setStatus("未开始");
+        entity.setStatus(RUNNING);
+        entity.setNodeId(nodeId);
+        entity.setLeaseUntil(leaseEnd());
         entity.setStartUrl(startUrl);
-        repo.save(entity);
+        persist(entity);
+        leased.put(uuid, entity.getId());
 
         Future<?> f = executor.submit(new Runnable() {
             public void run() {
@@ -192,18 +700,20 @@ public class CrawlManager {
                     entity.setStatus("采集中");
                     entity.setStartTime(java.time.Instant.now());
                     entity.setThreadName(Thread.currentThread().getName());
-                    repo.save(entity);
+                    persist(entity);
 
                     try { Thread.sleep(20000L); } catch (InterruptedException ignored) {}
 
+                    leased.remove(uuid);
                     entity.setStatus("采集完成");
                     entity.setEndTime(java.time.Instant.now());
-                    repo.save(entity);
+                    persist(entity);
                 } catch (Throwable ex) {
+                    leased.remove(uuid);
                     entity.setStatus("采集失败");
                     entity.setErrorMessage(ex.getMessage());
                     entity.setEndTime(java.time.Instant.now());
-                    repo.save(entity);
+                    persist(entity);
                 }
             }
         });
@@ -211,11 +721,178 @@ public class CrawlManager {
         return uuid;
     }
 
+    // 是否有尚未结束的任务：本实例未结束的任务、排队中的任务，以及其它实例上租约有效的运行中任务（共享输出目录与内容库）；
+    // 租约已过期或没有租约的“采集中”行不计入，否则一条遗留行会让回收永远被拒绝。查不了数据库时按有任务处理
+    public boolean hasActiveTasks() {
+        for (Future<?> f : futures.values()) {
+            if (!f.isDone()) return true;
+        }
+        try {
+            return repo.countByStatus(QUEUED) > 0 || repo.countByStatusAndLeaseUntilAfter(RUNNING, Instant.now()) > 0;
+        } catch (Exception ex) {
+            System.out.println("[TASK][ACTIVE-CHECK-FAIL] " + ex.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 清理已结束的任务：结束超过保留时长的，以及已结束任务数超出上限时最早结束的。
+     * 移除后 get 与列表改从数据库读取；已结束的模拟任务只移除其 Future。
+     */
+    private void evictFinished() {
+        try {
+            long ttl = queueProps.getFinishedTaskTtlSeconds();
+            int max = queueProps.getMaxFinishedTasks();
+            List<CrawlTask> finished = new ArrayList<CrawlTask>();
+            for (CrawlTask t : tasks.values()) {
+                if (isFinished(t)) finished.add(t);
+            }
+            Collections.sort(finished, new Comparator<CrawlTask>() {
+                public int compare(CrawlTask a, CrawlTask b) {
+                    return a.getEndTime().compareTo(b.getEndTime());
+                }
+            });
+            Instant cutoff = Instant.now().minusSeconds(ttl);
+            int excess = max > 0 ? finished.size() - max : 0;
+            int evicted = 0;
+            for (CrawlTask t : finished) {
+                boolean expired = ttl > 0 && t.getEndTime().isBefore(cutoff);
+                if (!expired && excess <= 0) break;
+                excess--;
+                // 续采会放入新的任务对象，只移除这一个
+                if (tasks.remove(t.getId(), t)) {
+                    Future<?> f = futures.get(t.getId());
+                    if (f != null && f.isDone()) futures.remove(t.getId(), f);
+                    evicted++;
+                }
+            }
+            for (Map.Entry<String, Future<?>> f : futures.entrySet()) {
+                if (f.getValue().isDone() && !tasks.containsKey(f.getKey())) futures.remove(f.getKey(), f.getValue());
+            }
+            // 排队的任务被其它实例认领或取消后不会再结束，一并移除
+            for (CrawlTask t : tasks.values()) {
+                if (t.getStatus() != CrawlTask.Status.QUEUED) continue;
+                Map<String, CrawlTaskEntity> active = new HashMap<String, CrawlTaskEntity>();
+                for (CrawlTaskEntity e : repo.findByStatusIn(Arrays.asList(QUEUED, RUNNING))) active.put(e.getTaskUuid(), e);
+                pruneClaimed(active);
+                break;
+            }
+            if (evicted > 0) System.out.println("[TASK][EVICT] evicted=" + evicted + ", inMemory=" + tasks.size());
+        } catch (Exception ex) {
+            System.out.println("[TASK][EVICT-FAIL] " + ex);
+        }
+    }
+
+    private boolean isFinished(CrawlTask t) {
+        if (t.getEndTime() == null) return false;
+        if (t.getStatus() == CrawlTask.Status.QUEUED || t.getStatus() == CrawlTask.Status.RUNNING) return false;
+        Future<?> f = futures.get(t.getId());
+        return f == null || f.isDone();
+    }
+
+    // 本实例的任务；其它实例提交或执行的任务、已从内存移除的任务从数据库读取
     public CrawlTask get(String id) {
-        return tasks.get(id);
+        CrawlTask t = tasks.get(id);
+        if (t != null && t.getStatus() != CrawlTask.Status.QUEUED) return t;
+        CrawlTaskEntity e = repo.findByTaskUuid(id);
+        if (t != null && !dropIfClaimed(t, e)) return t;
+        return e == null ? null : viewOf(e);
+    }
+
+    /**
+     * 本实例提交、仍显示为排队的任务，数据库中的行已被其它实例认领或已结束（取消等）时，本地对象不会再更新：
+     * 从内存移除并返回 true，之后改从数据库读取。row 为 null（刚提交尚未写入）时保留。
+     */
+    private boolean dropIfClaimed(CrawlTask t, CrawlTaskEntity row) {
+        if (t.getStatus() != CrawlTask.Status.QUEUED || row == null) return false;
+        Future<?> f = futures.get(t.getId());
+        if (f != null && !f.isDone()) return false;
+        if (QUEUED.equals(row.getStatus())) return false;
+        // 本实例刚认领、尚未启动
+        if (RUNNING.equals(row.getStatus()) && nodeId.equals(row.getNodeId())) return false;
+        if (!tasks.remove(t.getId(), t)) return false;
+        System.out.println("[TASK][CLAIMED-ELSEWHERE] id=" + t.getId() + ", status=" + row.getStatus() + ", node=" + row.getNodeId());
+        return true;
+    }
+
+    // 检查内存中所有排队的任务；active 为数据库中排队与采集中的行，不在其中的逐个查询
+    private void pruneClaimed(Map<String, CrawlTaskEntity> active) {
+        for (CrawlTask t : tasks.values()) {
+            if (t.getStatus() != CrawlTask.Status.QUEUED) continue;
+            CrawlTaskEntity row = active.get(t.getId());
+            dropIfClaimed(t, row != null ? row : repo.findByTaskUuid(t.getId()));
+        }
+    }
+
+    /**
+     * 分页列出任务（数据库中的全部任务，按开始时间倒序，排队中的排在最后），可按状态筛选；
+     * 本实例内存中的任务返回实时进度，其余按数据库中的记录返回。
+     */
+    public Page<CrawlTask> list(CrawlTask.Status status, int page, int size) {
+        PageRequest request = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 500)),
+                Sort.by(Sort.Order.desc("startTime"), Sort.Order.desc("id")));
+        Page<CrawlTaskEntity> rows = status == null ? repo.findAll(request) : repo.findByStatus(statusLabel(status), request);
+        List<CrawlTask> out = new ArrayList<CrawlTask>(rows.getNumberOfElements());
+        for (CrawlTaskEntity e : rows.getContent()) {
+            CrawlTask t = tasks.get(e.getTaskUuid());
+            out.add(t != null && !dropIfClaimed(t, e) ? t : viewOf(e));
+        }
+        return new PageImpl<CrawlTask>(out, request, rows.getTotalElements());
     }
 
+    // 本实例内存中的任务（排队、运行中与最近结束的），加上其它实例上排队与运行中的任务（带执行节点）；供进度推送使用
     public Collection<CrawlTask> list() {
-        return Collections.unmodifiableCollection(tasks.values());
+        Map<String, CrawlTaskEntity> active = new LinkedHashMap<String, CrawlTaskEntity>();
+        try {
+            for (CrawlTaskEntity e : repo.findByStatusIn(Arrays.asList(QUEUED, RUNNING))) active.put(e.getTaskUuid(), e);
+            pruneClaimed(active);
+        } catch (Exception ex) {
+            System.out.println("[TASK][LIST-DB-FAIL] " + ex.getMessage());
+        }
+        List<CrawlTask> out = new ArrayList<CrawlTask>(tasks.values());
+        for (CrawlTaskEntity e : active.values()) {
+            if (!tasks.containsKey(e.getTaskUuid())) out.add(viewOf(e));
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    private CrawlTask viewOf(CrawlTaskEntity e) {
+        CrawlTask t = new CrawlTask(e.getTaskUuid(), requestOf(e));
+        t.setStatus(statusOf(e.getStatus()));
+        t.setNode(e.getNodeId());
+        t.setThreadName(e.getThreadName());
+        t.setStartTime(e.getStartTime());
+        t.setEndTime(e.getEndTime());
+        t.setErrorMessage(e.getErrorMessage());
+        // 按表中的统计生成结果快照
+        CrawlResult r = new CrawlResult();
+        r.setOutputDirectory(e.getOutputDir());
+        if (e.getPagesDownloaded() != null) r.setPagesDownloaded(e.getPagesDownloaded());
+        if (e.getAssetsDownloaded() != null) r.setAssetsDownloaded(e.getAssetsDownloaded());
+        if (e.getBytesDownloaded() != null) r.setBytesDownloaded(e.getBytesDownloaded());
+        if (e.getErrorCount() != null) r.setErrorCount(e.getErrorCount());
+        t.setResult(r);
+        t.freezeResult();
+        return t;
+    }
+
+    private static CrawlTask.Status statusOf(String status) {
+        if (RUNNING.equals(status)) return CrawlTask.Status.RUNNING;
+        if ("采集完成".equals(status)) return CrawlTask.Status.SUCCEEDED;
+        if ("采集失败".equals(status)) return CrawlTask.Status.FAILED;
+        if (CANCELLED.equals(status)) return CrawlTask.Status.CANCELLED;
+        if (INTERRUPTED.equals(status)) return CrawlTask.Status.INTERRUPTED;
+        return CrawlTask.Status.QUEUED;
+    }
+
+    private static String statusLabel(CrawlTask.Status status) {
+        switch (status) {
+            case RUNNING: return RUNNING;
+            case SUCCEEDED: return "采集完成";
+            case FAILED: return "采集失败";
+            case CANCELLED: return CANCELLED;
+            case INTERRUPTED: return INTERRUPTED;
+            default: return QUEUED;
+        }
     }
 }
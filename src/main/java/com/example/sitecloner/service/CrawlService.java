@@ -3,7 +3,6 @@ package com.example.sitecloner.service;
 import com.example.sitecloner.model.CrawlRequest;
 import com.example.sitecloner.model.CrawlResult;
 import com.example.sitecloner.config.StorageProperties;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -11,8 +10,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.UnknownHostException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -21,11 +22,23 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,9 +46,31 @@ import java.util.regex.Pattern;
 public class CrawlService {
 
     private final StorageProperties storageProperties;
+    private final HttpFetcher httpFetcher;
+    private final BlobStore blobs;
+    // 运行中的任务：结果对象 -> 运行期状态（结果对象未重写 equals，按引用区分），供 abort 使用
+    private final Map<CrawlResult, CrawlContext> running = new ConcurrentHashMap<>();
 
-    public CrawlService(StorageProperties storageProperties) {
+    public CrawlService(StorageProperties storageProperties, HttpFetcher httpFetcher, BlobStore blobs) {
         this.storageProperties = storageProperties;
+        this.httpFetcher = httpFetcher;
+        this.blobs = blobs;
+    }
+
+    // 采集任务线程的创建方式（平台线程或虚拟线程），与页面、资产 worker 一致
+    CrawlThreads threads() {
+        return httpFetcher.threads();
+    }
+
+    /**
+     * 立即停止一个运行中的任务：关闭前沿、停止资产池并断开在途 HTTP 连接。
+     * 只靠中断采集线程无法打断阻塞在套接字读取上的下载；返回 false 表示该任务不在运行。
+     */
+    public boolean abort(CrawlResult result) {
+        CrawlContext ctx = result == null ? null : running.get(result);
+        if (ctx == null) return false;
+        ctx.cancel();
+        return true;
     }
 
     // 正则：匹配 CSS/JS 文本中的 url(...) 模式
@@ -75,8 +110,20 @@ public class CrawlService {
     private static final Pattern SRC_JS_SPLIT2  = Pattern.compile("src\\s*=\\s*'([^']*\\.js)\\s*\"\\s*\\+", Pattern.CASE_INSENSITIVE);
 
     public CrawlResult crawl(CrawlRequest request) {
+        return crawl(request, false);
+    }
+
+    /**
+     * resume 为 true 时若输出目录下存在断点则从断点继续，否则从头开始。
+     * 任务被取消或中断时保留断点（result.isCancelled() 为 true），正常结束后删除断点。
+     */
+    public CrawlResult crawl(CrawlRequest request, boolean resume) {
+        return crawl(request, resume, new CrawlResult());
+    }
+
+    // 由调用方提供结果对象，采集过程中即可通过 result.snapshot() 查看进度
+    public CrawlResult crawl(CrawlRequest request, boolean resume, CrawlResult result) {
         Instant start = Instant.now();
-        CrawlResult result = new CrawlResult();
         Path outputDir = null;
         String baseHost = null;
         try {
@@ -89,7 +136,7 @@ public class CrawlService {
             outputDir = baseDir.resolve(outputDirName);
             Files.createDirectories(outputDir);
 
-            breadthFirstCrawl(startUri, baseHost, request, outputDir, result);
+            breadthFirstCrawl(startUri, baseHost, request, outputDir, result, resume);
 
             result.setOutputDirectory(outputDir.toAbsolutePath().toString());
         } catch (Exception e) {
@@ -115,7 +162,7 @@ public class CrawlService {
     }
 
     // 清洗外部配置的路径值（去掉首尾引号，去空白）
-    private static String sanitizePathConfig(String raw) {
+    static String sanitizePathConfig(String raw) {
         if (raw == null) return "output";
         String v = raw.trim();
         if ((v.startsWith("\"") && v.endsWith("\"")) || (v.startsWith("'") && v.endsWith("'"))) {
@@ -128,113 +175,425 @@ public class CrawlService {
                                    String baseHost,
                                    CrawlRequest request,
                                    Path outputDir,
-                                   CrawlResult result) throws IOException {
-        ArrayDeque<URI> queue = new ArrayDeque<>();
-        Set<String> visited = new HashSet<>();
-        queue.add(startUri);
-
-        int pages = 0;
-        int depth = 0;
-        int currentLevelCount = 1;
-        int nextLevelCount = 0;
-        System.out.println("[BFS][START] maxDepth=" + request.getMaxDepth() + ", maxPages=" + request.getMaxPages());
-
-        while (!queue.isEmpty() && pages < request.getMaxPages() && depth <= request.getMaxDepth()) {
-            URI uri = queue.poll();
-            currentLevelCount--;
-            String key = uri.toString();
-            if (visited.contains(key)) {
-                if (currentLevelCount == 0) {
-                    depth++;
-                    currentLevelCount = nextLevelCount;
-                    nextLevelCount = 0;
+                                   CrawlResult result,
+                                   boolean resume) throws IOException {
+        ValidatorStore validators = request.isIncremental() ? ValidatorStore.load(outputDir, outputSettingsKey(request)) : null;
+        long remaining;
+        final CrawlContext ctx = new CrawlContext(startUri, baseHost, request, outputDir, result, httpFetcher.openSession(), validators,
+                storageProperties.getFrontierMemoryEntries());
+        CrawlContext.bind(ctx);
+        running.put(result, ctx);
+        ScheduledExecutorService checkpointer = null;
+        try {
+            // 优先级前沿：sitemap 中的页面加分
+            if (!"fifo".equalsIgnoreCase(request.getFrontierStrategy()) && !request.isDebugOnlyHome()) {
+                SitemapReader.load(ctx);
+            }
+            if (!resume || !CrawlCheckpoint.restore(ctx)) {
+                CrawlCheckpoint.clear(outputDir);
+                ctx.frontier.offer(ctx.canonicalizer.canonicalize(startUri), 0);
+            }
+            resubmitRestoredAssets(ctx);
+            checkpointer = startCheckpointer(ctx);
+            runPages(ctx);
+            awaitAssets(ctx);
+        } finally {
+            if (checkpointer != null) checkpointer.shutdownNow();
+            remaining = ctx.frontier.size();
+            ctx.assets.shutdownNow();
+            // 中断标记会让文件通道在写入时直接关闭：先清除，写完断点与校验信息后再恢复
+            boolean interrupted = Thread.interrupted();
+            // 被取消/中断：在丢弃队列之前写最后一次断点，供下次续采
+            if (interrupted || ctx.isCancelled()) {
+                result.setCancelled(true);
+                saveCheckpoint(ctx);
+            } else {
+                CrawlCheckpoint.clear(outputDir);
+            }
+            CrawlContext.unbind();
+            running.remove(result);
+            ctx.frontier.discard();
+            // 取消时也保存：已完成部分的校验信息下次仍可复用
+            if (validators != null) {
+                try {
+                    validators.save();
+                } catch (IOException e) {
+                    result.addError("保存增量校验信息失败: " + e.getMessage());
                 }
-                continue;
             }
-            visited.add(key);
-            // 记录页面到结果（即使后续被中断或失败，也能用于 sitemap）
-            result.addPage(key);
-            if (Thread.currentThread().isInterrupted()) {
-                System.out.println("[BFS][CANCELLED] depth=" + depth + ", visited=" + visited.size() + ", queue=" + queue.size());
-                break;
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        System.out.println("[BFS][END] pages=" + result.getPagesDownloaded() + ", assets=" + result.getAssetsDownloaded()
+                + ", notModified=" + result.getNotModified()
+                + ", nearDuplicates=" + result.getNearDuplicatesSkipped() + ", prunedLinks=" + result.getDuplicateLinksPruned()
+                + ", trapBlocked=" + result.getTrapLinksBlocked()
+                + ", requests=" + ctx.budget.requests() + ", bytes=" + ctx.budget.bytes()
+                + (result.getBudgetExhausted() != null ? ", budget=" + result.getBudgetExhausted() : "")
+                + ", visited=" + ctx.visited.size() + ", remainingQueue=" + remaining
+                + (result.isCancelled() ? ", cancelled" : ""));
+    }
+
+    // 按 checkpointIntervalSeconds 定期保存断点（同时保存增量校验信息），<=0 表示只在取消时保存
+    private ScheduledExecutorService startCheckpointer(final CrawlContext ctx) {
+        long interval = storageProperties.getCheckpointIntervalSeconds();
+        if (interval <= 0) return null;
+        final String ownerName = Thread.currentThread().getName();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, ownerName + "-checkpoint");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                saveCheckpoint(ctx);
+                if (ctx.validators != null) {
+                    try { ctx.validators.save(); } catch (IOException ignore) {}
+                }
             }
-            System.out.println("[BFS][VISIT] depth=" + depth + " -> " + uri);
+        }, interval, interval, TimeUnit.SECONDS);
+        return timer;
+    }
 
-            try {
-                org.jsoup.Connection.Response res = Jsoup.connect(uri.toString())
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36")
-                        .timeout(20000)
-                        .ignoreHttpErrors(true)
-                        .execute();
-                int status = res.statusCode();
-                if (status == 404) {
-                    System.out.println("[PAGE][SKIP-404] " + uri);
-                } else {
-                    Document doc = res.parse();
-                    Path localHtmlPath = mapUriToLocalPath(outputDir, uri, true);
-                    Files.createDirectories(localHtmlPath.getParent());
-                    rewriteAndSaveHtml(doc, uri, outputDir, localHtmlPath, request, result);
-                    result.addPage(uri.toString());
-                    pages++;
-                    result.setPagesDownloaded(pages);
+    private static void saveCheckpoint(CrawlContext ctx) {
+        long t0 = System.nanoTime();
+        try {
+            CrawlCheckpoint.save(ctx);
+            System.out.println("[CHECKPOINT][SAVE] visited=" + ctx.visited.size() + ", queue=" + ctx.frontier.size()
+                    + ", ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[CHECKPOINT][SAVE-FAIL] " + e);
+        }
+    }
 
-                    if (request.isDebugOnlyHome()) {
-                        break;
+    // 影响输出内容的设置摘要；与上次采集不同时不能复用本地文件
+    private static String outputSettingsKey(CrawlRequest request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getTitleSuffix()).append('\n').append(request.getSitemapDomain()).append('\n');
+        if (request.getReplaceRules() != null) {
+            for (com.example.sitecloner.model.ReplacementRule rule : request.getReplaceRules()) {
+                if (rule == null) continue;
+                sb.append(rule.getFind()).append('\t').append(rule.getReplaceWith()).append('\n');
+            }
+        }
+        return ValidatorStore.sha256Hex(sb.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    }
+
+    private void runPages(final CrawlContext ctx) {
+        CrawlRequest request = ctx.request;
+        int concurrency = Math.max(1, request.getFetchConcurrency());
+        System.out.println("[BFS][START] maxDepth=" + request.getMaxDepth() + ", maxPages=" + request.getMaxPages()
+                + ", frontier=" + request.getFrontierStrategy() + ", concurrency=" + concurrency + ", assetConcurrency=" + request.getAssetConcurrency());
+
+        if (concurrency == 1) {
+            // 单并发：直接在当前采集线程上处理，保持原有的取消语义
+            runPageWorker(ctx);
+        } else {
+            ExecutorService workers = Executors.newFixedThreadPool(concurrency,
+                    httpFetcher.threads().factory(Thread.currentThread().getName() + "-w"));
+            try {
+                List<Future<?>> running = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    running.add(workers.submit(new Runnable() {
+                        public void run() {
+                            CrawlContext.bind(ctx);
+                            try { runPageWorker(ctx); } finally { CrawlContext.unbind(); }
+                        }
+                    }));
+                }
+                for (Future<?> f : running) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException ex) {
+                        ctx.result.addError("页面 worker 异常: " + ex.getCause());
                     }
+                }
+            } catch (InterruptedException ie) {
+                // 采集线程被 CrawlManager.cancel 中断：通知所有 worker 停止
+                ctx.cancel();
+                Thread.currentThread().interrupt();
+                System.out.println("[BFS][CANCELLED] visited=" + ctx.visited.size() + ", queue=" + ctx.frontier.size());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+    }
 
-                    // 从页面 a[href] 继续发现链接
-                    Elements links = doc.select("a[href]");
-                    for (Element a : links) {
-                        String href = a.attr("abs:href");
-                        if (href == null || href.trim().isEmpty()) continue;
-                        URI next = safeUri(href);
-                        if (next == null) continue;
-                        if (isSitemapXml(next)) { System.out.println("[BFS][SKIP-SITEMAP] " + next); continue; }
-                        if (request.isSameDomain() && !Objects.equals(next.getHost(), baseHost)) { System.out.println("[BFS][SKIP-XDOMAIN] " + next); continue; }
-                        if (!isLikelyHtml(next)) { System.out.println("[BFS][SKIP-NONHTML] " + next); continue; }
-                        if (visited.contains(next.toString())) { System.out.println("[BFS][SKIP-VISITED] " + next); continue; }
-                        queue.add(next);
-                        nextLevelCount++;
-                        System.out.println("[BFS][ENQUEUE] depthNext=" + (depth+1) + " -> " + next);
+    // 页面阶段结束后等待后台资产队列排空，任务才算完成
+    private void awaitAssets(CrawlContext ctx) {
+        if (ctx.isCancelled()) return;
+        System.out.println("[ASSET][DRAIN] pending=" + ctx.assets.pending());
+        try {
+            ctx.assets.awaitDrained();
+        } catch (InterruptedException ie) {
+            ctx.cancel();
+            Thread.currentThread().interrupt();
+            System.out.println("[ASSET][CANCELLED] pending=" + ctx.assets.pending());
+        }
+    }
+
+    // 提交资产下载：本地路径已确定，调用方可立即重写引用；处于采集任务中时交由后台资产池执行
+    private void scheduleAssetDownload(final URI abs, final URI referer, final Path assetLocal,
+                                       final CrawlResult result, final String errorPrefix) {
+        if (isResumedAsset(abs, assetLocal)) {
+            System.out.println("[RESUME][SKIP] " + abs);
+            return;
+        }
+        final String key = trackPendingAsset(false, abs, referer, assetLocal, errorPrefix);
+        Runnable job = new Runnable() {
+            public void run() {
+                try {
+                    if (downloadToFile(abs, referer, assetLocal)) {
+                        result.incrementAssetsDownloaded();
+                    } else {
+                        result.incrementNotModified();
                     }
+                    assetDone(key, true);
+                } catch (Exception ex) {
+                    // 取消时保留在待下载列表中，续采时重新提交；预算用完后的失败不记为错误
+                    if (stopping()) return;
+                    assetDone(key, false);
+                    result.addError(errorPrefix + abs + " -> " + ex.getMessage());
+                }
+            }
+        };
+        submitAssetJob(job);
+    }
 
-                    // 将 JS 中收集到的页面加入队列（同域且未访问）
-                    if (!result.getJsPages().isEmpty()) {
-                        for (String pg : new java.util.HashSet<String>(result.getJsPages())) {
-                            try {
-                                URI next = safeUri(pg);
-                                if (next == null) continue;
-                                if (request.isSameDomain() && !Objects.equals(next.getHost(), baseHost)) continue;
-                                if (!isLikelyHtml(next)) continue;
-                                if (visited.contains(next.toString())) continue;
-                                queue.add(next);
-                                nextLevelCount++;
-                            } catch (Exception ignore) {}
-                        }
-                        result.getJsPages().clear();
+    // 断点续采：上次下载完成的资产（只在下载成功后标记；saveTo 先写临时文件再改名，文件存在即完整）
+    private static boolean isResumedAsset(URI abs, Path assetLocal) {
+        CrawlContext ctx = CrawlContext.current();
+        if (ctx == null || ctx.resumedAssets.size() == 0) return false;
+        return ctx.resumedAssets.contains(canonicalizer().key(abs)) && Files.isRegularFile(assetLocal);
+    }
+
+    // 记录已提交、尚未完成的资产下载（写入断点），返回其去重键；不在采集任务中时返回 null
+    private static String trackPendingAsset(boolean stylesheet, URI abs, URI referer, Path local, String errorPrefix) {
+        CrawlContext ctx = CrawlContext.current();
+        if (ctx == null) return null;
+        String key = canonicalizer().key(abs);
+        ctx.pendingAssets.put(key, new CrawlContext.PendingAsset(stylesheet, abs, referer, local, errorPrefix));
+        return key;
+    }
+
+    // 资产下载结束：completed 为 true 时记入已完成（断点续采时跳过），失败的不再重试
+    private static void assetDone(String key, boolean completed) {
+        CrawlContext ctx = CrawlContext.current();
+        if (ctx == null || key == null) return;
+        if (completed) ctx.completedAssets.add(key);
+        ctx.pendingAssets.remove(key);
+    }
+
+    // 断点时尚在资产队列中的下载：所在页面已访问、不会再次发现，直接重新提交
+    private void resubmitRestoredAssets(CrawlContext ctx) {
+        if (ctx.restoredAssets.isEmpty()) return;
+        System.out.println("[RESUME][ASSETS] pending=" + ctx.restoredAssets.size());
+        for (CrawlContext.PendingAsset a : ctx.restoredAssets) {
+            if (!markAsset(ctx.result, a.uri.toString())) continue;
+            try {
+                Files.createDirectories(a.local.getParent());
+            } catch (IOException e) {
+                ctx.result.addError(a.errorPrefix + a.uri + " -> " + e.getMessage());
+                continue;
+            }
+            if (a.stylesheet) {
+                scheduleStylesheet(a.uri, a.referer, ctx.outputDir, a.local, ctx.request, ctx.result);
+            } else {
+                scheduleAssetDownload(a.uri, a.referer, a.local, ctx.result, a.errorPrefix);
+            }
+        }
+        ctx.restoredAssets.clear();
+    }
+
+    private void submitAssetJob(Runnable job) {
+        CrawlContext ctx = CrawlContext.current();
+        if (ctx == null) {
+            job.run();
+        } else {
+            ctx.assets.submit(job);
+        }
+    }
+
+    // 页面 worker：从共享前沿队列取出条目直到耗尽、预算用完或任务取消
+    private void runPageWorker(CrawlContext ctx) {
+        while (true) {
+            if (ctx.isCancelled()) {
+                ctx.cancel();
+                System.out.println("[BFS][CANCELLED] visited=" + ctx.visited.size() + ", queue=" + ctx.frontier.size());
+                return;
+            }
+            CrawlFrontier.Entry entry;
+            try {
+                entry = ctx.frontier.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                continue;
+            }
+            if (entry == null) return;
+            boolean saved = false;
+            try {
+                saved = visitPage(entry, ctx);
+            } finally {
+                // 取消后前沿已关闭，新出链会被丢弃：该页留到续采时重做
+                if (ctx.isCancelled()) ctx.frontier.abandon(entry);
+                else ctx.frontier.done(entry, saved);
+            }
+        }
+    }
+
+    // 抓取并保存单个页面，返回是否成功保存（计入 maxPages）
+    private boolean visitPage(CrawlFrontier.Entry entry, CrawlContext ctx) {
+        URI uri = entry.uri;
+        int depth = entry.depth;
+        CrawlRequest request = ctx.request;
+        CrawlResult result = ctx.result;
+        if (depth > request.getMaxDepth()) return false;
+        String key = uri.toString();
+        if (!ctx.visited.add(key)) return false;
+        // 记录页面到结果（即使后续被中断或失败，也能用于 sitemap）
+        result.addPage(key);
+        result.setCurrentUrl(key);
+        System.out.println("[BFS][VISIT] depth=" + depth + " -> " + uri);
+
+        try {
+            Document doc;
+            Path localHtmlPath = mapUriToLocalPath(ctx.outputDir, uri, true);
+            FetchResponse res = ctx.http.get(uri, null, true, conditionalHeaders(key, localHtmlPath));
+            String etag;
+            String lastModified;
+            try {
+                int status = res.status();
+                if (status == 404) {
+                    System.out.println("[PAGE][SKIP-404] " + uri);
+                    return false;
+                }
+                if (status == 304 && ctx.validators != null) {
+                    // 页面未变化：保留本地文件，按上次记录的出链继续发现
+                    System.out.println("[PAGE][NOT-MODIFIED] " + uri);
+                    result.incrementPagesDownloaded();
+                    result.incrementNotModified();
+                    if (request.isDebugOnlyHome()) {
+                        ctx.frontier.close();
+                        return true;
                     }
+                    enqueueLinks(ctx.validators.loadLinks(key), depth + 1, ctx);
+                    return true;
+                }
+                FetchResponse.BodyKind kind = res.kind();
+                if (kind != FetchResponse.BodyKind.HTML) {
+                    // 链接按扩展名猜成了页面，实际是文件：不解析，直接按资源流式落盘
+                    result.removePage(key);
+                    saveNonHtmlPage(res, kind, ctx);
+                    return false;
                 }
+                etag = res.etag();
+                lastModified = res.lastModified();
+                doc = res.parse(httpFetcher.properties().getMaxPageBytes());
+            } finally {
+                res.close();
+            }
+            // 出链须在重写为本地相对路径之前收集，否则带查询参数的链接会被还原成 _q_ 文件名
+            List<String> outlinks = new ArrayList<>();
+            Elements links = doc.select("a[href]");
+            for (Element a : links) {
+                String href = a.attr("abs:href");
+                if (href == null || href.trim().isEmpty()) continue;
+                outlinks.add(href);
+            }
+            String original = ctx.duplicates == null ? null : ctx.duplicates.check(uri, doc);
+            if (original != null) {
+                // 近似重复：不重写、不保存、不占页数；出链照常发现（重复率高的模板在入队时剪掉）。
+                // 其它页面指向它的链接已重写为它的本地路径，在那里写一个跳转到原页面的页面
+                System.out.println("[DUP][SKIP] " + uri + " ~ " + original);
+                result.removePage(key);
+                result.incrementNearDuplicatesSkipped();
+                try {
+                    Path originalPath = mapUriToLocalPath(ctx.outputDir, new URI(original), true);
+                    if (!originalPath.equals(localHtmlPath)) writeRedirectPage(localHtmlPath, originalPath);
+                } catch (Exception ex) {
+                    result.addError("近似重复页面跳转写入失败: " + uri + " -> " + ex.getMessage());
+                }
+                enqueueLinks(outlinks, depth + 1, ctx);
+                return false;
+            }
+            Files.createDirectories(localHtmlPath.getParent());
+            Set<String> jsPages = rewriteAndSaveHtml(doc, uri, ctx.outputDir, localHtmlPath, request, result);
+            result.addPage(uri.toString());
+            result.incrementPagesDownloaded();
+
+            if (request.isDebugOnlyHome()) {
+                ctx.frontier.close();
+                return true;
+            }
 
-            } catch (Exception ex) {
-                result.addError(uri + " -> " + ex.getMessage());
+            // 再加上本页 JS 中收集到的页面
+            outlinks.addAll(jsPages);
+            // 出链保存成功才记录校验信息：否则下次命中 304 时会按残缺的出链继续；已取消的页面续采时会重做
+            if (ctx.validators != null && !ctx.isCancelled() && ctx.validators.saveLinks(key, outlinks)) {
+                ctx.validators.record(key, etag, lastModified, localHtmlPath, null);
             }
+            enqueueLinks(outlinks, depth + 1, ctx);
+            return true;
+        } catch (Exception ex) {
+            // 取消或预算用完时断开连接导致的失败不记为错误
+            if (!ctx.isStopping()) result.addError(uri + " -> " + ex.getMessage());
+            return false;
+        }
+    }
+
+    // 页面路径上拿到非 HTML 响应：按资源路径保存（已作为资源下载过则跳过），不计入页面；
+    // 指向它的链接已按页面路径重写，两者不同时（无扩展名、带查询串）在页面路径写一个跳转到资源文件的页面
+    private void saveNonHtmlPage(FetchResponse res, FetchResponse.BodyKind kind, CrawlContext ctx) throws IOException {
+        URI uri = res.url();
+        System.out.println("[PAGE][NON-HTML] kind=" + kind + ", type=" + res.contentType() + " -> " + uri);
+        Path assetLocal = mapUriToLocalPath(ctx.outputDir, uri, false);
+        Path pageLocal = mapUriToLocalPath(ctx.outputDir, uri, true);
+        if (!pageLocal.equals(assetLocal)) writeRedirectPage(pageLocal, assetLocal);
+        if (!markAsset(ctx.result, uri.toString())) {
+            System.out.println("[ASSET][SKIP-DUP] " + uri);
+            res.abort();
+            return;
+        }
+        FetchResponse.Saved saved = res.saveTo(assetLocal, maxAssetBytes());
+        blobs.adopt(assetLocal, saved.sha256);
+        ctx.result.incrementAssetsDownloaded();
+    }
 
-            if (currentLevelCount == 0) {
-                depth++;
-                currentLevelCount = nextLevelCount;
-                nextLevelCount = 0;
-                System.out.println("[BFS][LEVEL-END] depth=" + depth + ", queueSize=" + queue.size());
+    // 将出链中同域、未访问的页面加入队列
+    private void enqueueLinks(List<String> outlinks, int nextDepth, CrawlContext ctx) {
+        if (nextDepth > ctx.request.getMaxDepth()) return;
+        for (String href : outlinks) {
+            URI next = ctx.canonicalizer.canonicalize(safeUri(href));
+            if (next == null) continue;
+            if (isSitemapXml(next)) { System.out.println("[BFS][SKIP-SITEMAP] " + next); continue; }
+            if (ctx.request.isSameDomain() && !Objects.equals(next.getHost(), ctx.baseHost)) { System.out.println("[BFS][SKIP-XDOMAIN] " + next); continue; }
+            if (!isLikelyHtml(next)) { System.out.println("[BFS][SKIP-NONHTML] " + next); continue; }
+            if (ctx.visited.contains(next.toString())) { System.out.println("[BFS][SKIP-VISITED] " + next); continue; }
+            if (ctx.duplicates != null && ctx.duplicates.isDuplicateProne(next)) {
+                ctx.result.incrementDuplicateLinksPruned();
+                System.out.println("[DUP][PRUNE] " + next);
+                continue;
             }
+            CrawlTrapGuard.Trap trap = ctx.traps.check(next);
+            if (trap != null) {
+                ctx.result.incrementTrapLinksBlocked();
+                System.out.println("[TRAP][" + trap + "] " + next);
+                continue;
+            }
+            ctx.frontier.offer(next, nextDepth);
+            System.out.println("[BFS][ENQUEUE] depthNext=" + nextDepth + " -> " + next);
         }
-        System.out.println("[BFS][END] pages=" + pages + ", finalDepth=" + depth + ", remainingQueue=" + queue.size());
     }
 
-    private void rewriteAndSaveHtml(Document doc,
-                                    URI pageUri,
-                                    Path outputDir,
-                                    Path localHtmlPath,
-                                    CrawlRequest request,
-                                    CrawlResult result) throws IOException {
+    // 重写并保存页面，返回本页脚本（外链 JS、内联脚本与事件属性）中发现的页面 URL
+    private Set<String> rewriteAndSaveHtml(Document doc,
+                                           URI pageUri,
+                                           Path outputDir,
+                                           Path localHtmlPath,
+                                           CrawlRequest request,
+                                           CrawlResult result) throws IOException {
+        Set<String> jsPages = new LinkedHashSet<>();
         // 先确保站点根资源（favicon、templets 下的 js）已准备好，防止后续下载同名资源覆盖
         try { ensureSiteAssets(outputDir, pageUri); } catch (Exception e) { result.addError("站点资产准备失败: " + e.getMessage()); }
         // 处理常见资源: img[src], script[src], link[href]
@@ -242,7 +601,7 @@ public class CrawlService {
             String attr = el.hasAttr("src") ? "src" : "href";
             String abs = el.attr("abs:" + attr);
             if (abs == null || abs.trim().isEmpty()) continue;
-            URI resUri = safeUri(abs);
+            URI resUri = canonical(safeUri(abs));
             if (resUri == null) continue;
             if (isSitemapXml(resUri)) { System.out.println("[ASSET][SKIP-SITEMAP] " + resUri); continue; }
             try {
@@ -254,37 +613,46 @@ public class CrawlService {
                 Files.createDirectories(resLocal.getParent());
 
                 if (isStylesheet) {
-                    // 读取 CSS 文本
-                    org.jsoup.Connection.Response resp = Jsoup.connect(resUri.toString())
-                            .ignoreContentType(true)
-                            .timeout(20000)
-                            .header("Referer", pageUri.toString())
-                            .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36")
-                            .ignoreHttpErrors(true)
-                            .maxBodySize(0)
-                            .execute();
-                    String cssText = new String(resp.bodyAsBytes(), StandardCharsets.UTF_8);
-                    String rewritten = rewriteCssUrls(cssText, resUri, outputDir, resLocal, result);
-                    rewritten = applyReplacements(rewritten, request);
-                    Files.write(resLocal, rewritten.getBytes(StandardCharsets.UTF_8));
-                    result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                    if (!markAsset(result, resUri.toString())) {
+                        System.out.println("[ASSET][SKIP-DUP][CSS] " + resUri);
+                    } else {
+                        scheduleStylesheet(resUri, pageUri, outputDir, resLocal, request, result);
+                    }
                 } else {
                     if ("script".equalsIgnoreCase(el.tagName())) {
                         if (isProtectedSiteAsset(outputDir, resUri)) {
                             System.out.println("[ASSET][SKIP-PROTECTED][SCRIPT] " + resUri);
                             continue;
                         }
-                        byte[] bytes = fetchBinary(resUri, pageUri);
-                        String jsText = new String(bytes, StandardCharsets.UTF_8);
-                        // 先重写 JS 内的跳转链接（外链→/，站内→相对路径并去掉 index.html）
-                        String jsRewritten = rewriteJsLinksInContent(jsText, pageUri, outputDir, localHtmlPath, result);
-                        jsRewritten = applyReplacements(jsRewritten, request);
-                        // 保存 JS
-                        Files.write(resLocal, jsRewritten.getBytes(StandardCharsets.UTF_8));
-                        result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                        ValidatorStore validators = validatorStore();
+                        TextBody body = fetchTextIfModified(resUri, pageUri, resLocal);
+                        byte[] jsBytes;
+                        if (body == null) {
+                            // 未变化：沿用本地已重写的 JS，并补回上次从中发现的页面
+                            System.out.println("[ASSET][NOT-MODIFIED][SCRIPT] " + resUri);
+                            result.incrementNotModified();
+                            jsPages.addAll(validators.loadLinks(resUri.toString()));
+                            jsBytes = Files.readAllBytes(resLocal);
+                        } else {
+                            String jsText = new String(body.bytes, StandardCharsets.UTF_8);
+                            // 先重写 JS 内的跳转链接（外链→/，站内→相对路径并去掉 index.html）
+                            Set<String> jsLinks = new LinkedHashSet<>();
+                            String jsRewritten = rewriteJsLinksInContent(jsText, pageUri, outputDir, localHtmlPath, jsLinks);
+                            jsPages.addAll(jsLinks);
+                            jsRewritten = applyReplacements(jsRewritten, request);
+                            // 保存 JS
+                            jsBytes = jsRewritten.getBytes(StandardCharsets.UTF_8);
+                            String sha256 = blobs.write(jsBytes, resLocal);
+                            result.incrementAssetsDownloaded();
+                            if (validators != null) {
+                                if (validators.saveLinks(resUri.toString(), jsLinks)) {
+                                    validators.record(resUri.toString(), body.etag, body.lastModified, resLocal, sha256);
+                                }
+                            }
+                        }
                         // 在重写后的 JS 内容中提取并下载图片资源
                         try {
-                            processJsForAssets(jsRewritten.getBytes(StandardCharsets.UTF_8), resUri, pageUri, outputDir, localHtmlPath, result);
+                            processJsForAssets(jsBytes, resUri, pageUri, outputDir, localHtmlPath, result);
                         } catch (Exception ex) {
                             result.addError("JS 资源提取失败: " + resUri + " -> " + ex.getMessage());
                         }
@@ -294,12 +662,10 @@ public class CrawlService {
                             System.out.println("[ASSET][SKIP-PROTECTED] " + resUri);
                             continue;
                         }
-                        if (!result.tryMarkAsset(key)) {
+                        if (!markAsset(result, key)) {
                             System.out.println("[ASSET][SKIP-DUP] " + key);
                         } else {
-                            byte[] bytes = fetchBinary(resUri, pageUri);
-                            Files.write(resLocal, bytes);
-                            result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                            scheduleAssetDownload(resUri, pageUri, resLocal, result, "资源下载失败: ");
                         }
                     }
                 }
@@ -330,7 +696,7 @@ public class CrawlService {
                 String js = sc.data();
                 if (isBlank(js)) js = sc.html();
                 if (isBlank(js)) continue;
-                String rewrittenJs = rewriteJsLinksInContent(js, pageUri, outputDir, localHtmlPath, result);
+                String rewrittenJs = rewriteJsLinksInContent(js, pageUri, outputDir, localHtmlPath, jsPages);
                 // HTML 内联脚本专用：将转义引号形式还原为原始引号，例如 \"/path\" -> "/path"
                 String htmlSafeJs = htmlInlineJsUnescapeQuotes(rewrittenJs);
                 sc.text(htmlSafeJs);
@@ -349,14 +715,14 @@ public class CrawlService {
                     if (!el.hasAttr(a)) continue;
                     String v = el.attr(a);
                     if (isBlank(v)) continue;
-                    String rewritten = rewriteJsLinksInContent(v, pageUri, outputDir, localHtmlPath, result);
+                    String rewritten = rewriteJsLinksInContent(v, pageUri, outputDir, localHtmlPath, jsPages);
                     if (!isBlank(rewritten) && !rewritten.equals(v)) el.attr(a, rewritten);
                 }
                 for (String a : urlLikeAttrs) {
                     if (!el.hasAttr(a)) continue;
                     String v = el.attr(a);
                     if (isBlank(v)) continue;
-                    String rewritten = rewriteJsLinksInContent(v, pageUri, outputDir, localHtmlPath, result);
+                    String rewritten = rewriteJsLinksInContent(v, pageUri, outputDir, localHtmlPath, jsPages);
                     if (!isBlank(rewritten) && !rewritten.equals(v)) el.attr(a, rewritten);
                 }
             }
@@ -415,12 +781,10 @@ public class CrawlService {
                     Path assetLocal = mapUriToLocalPath(outputDir, abs, false);
                     Files.createDirectories(assetLocal.getParent());
                     String key = abs.toString();
-                    if (!result.tryMarkAsset(key)) {
+                    if (!markAsset(result, key)) {
                         System.out.println("[ASSET][SKIP-DUP][LAZY] " + key);
                     } else {
-                        byte[] bytes = fetchBinary(abs, pageUri);
-                        Files.write(assetLocal, bytes);
-                        result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                        scheduleAssetDownload(abs, pageUri, assetLocal, result, "懒加载图片下载失败: ");
                     }
                     String rel = computeRelativePath(localHtmlPath.getParent(), assetLocal);
                     img.attr(la, rel);
@@ -469,12 +833,10 @@ public class CrawlService {
                     Path assetLocal = mapUriToLocalPath(outputDir, target, false);
                     Files.createDirectories(assetLocal.getParent());
                     String key = target.toString();
-                    if (!result.tryMarkAsset(key)) {
+                    if (!markAsset(result, key)) {
                         System.out.println("[ASSET][SKIP-DUP][A] " + key);
                     } else {
-                        byte[] bytes = fetchBinary(target, pageUri);
-                        Files.write(assetLocal, bytes);
-                        result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                        scheduleAssetDownload(target, pageUri, assetLocal, result, "链接资源下载失败: ");
                     }
                     String rel = computeRelativePath(localHtmlPath.getParent(), assetLocal);
                     a.attr("href", rel);
@@ -493,12 +855,10 @@ public class CrawlService {
                     Path assetLocal = mapUriToLocalPath(outputDir, abs, false);
                     Files.createDirectories(assetLocal.getParent());
                     String key = abs.toString();
-                    if (!result.tryMarkAsset(key)) {
+                    if (!markAsset(result, key)) {
                         System.out.println("[ASSET][SKIP-DUP][SOURCE] " + key);
                     } else {
-                        byte[] bytes = fetchBinary(abs, pageUri);
-                        Files.write(assetLocal, bytes);
-                        result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                        scheduleAssetDownload(abs, pageUri, assetLocal, result, "source 资源下载失败: ");
                     }
                     String rel = computeRelativePath(localHtmlPath.getParent(), assetLocal);
                     source.attr("src", rel);
@@ -522,12 +882,10 @@ public class CrawlService {
                 Path assetLocal = mapUriToLocalPath(outputDir, abs, false);
                 Files.createDirectories(assetLocal.getParent());
                 String key = abs.toString();
-                if (!result.tryMarkAsset(key)) {
+                if (!markAsset(result, key)) {
                     System.out.println("[ASSET][SKIP-DUP][PRELOAD] " + key);
                 } else {
-                    byte[] bytes = fetchBinary(abs, pageUri);
-                    Files.write(assetLocal, bytes);
-                    result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                    scheduleAssetDownload(abs, pageUri, assetLocal, result, "preload 图片下载失败: ");
                 }
                 String rel = computeRelativePath(localHtmlPath.getParent(), assetLocal);
                 link.attr("href", rel);
@@ -591,7 +949,43 @@ public class CrawlService {
         String htmlOut = doc.outerHtml();
         htmlOut = applyReplacements(htmlOut, request);
         byte[] htmlBytes = htmlOut.getBytes(StandardCharsets.UTF_8);
-        Files.write(localHtmlPath, htmlBytes);
+        blobs.write(htmlBytes, localHtmlPath);
+        return jsPages;
+    }
+
+    // 样式表：后台下载 CSS 文本，重写其中的 url(...) 后保存
+    private void scheduleStylesheet(final URI cssUri, final URI pageUri, final Path outputDir, final Path cssLocal,
+                                    final CrawlRequest request, final CrawlResult result) {
+        final String key = trackPendingAsset(true, cssUri, pageUri, cssLocal, "资源下载失败: ");
+        submitAssetJob(new Runnable() {
+            public void run() {
+                try {
+                    // 读取 CSS 文本；未变化时保留本地文件
+                    TextBody body = fetchTextIfModified(cssUri, pageUri, cssLocal);
+                    if (body == null) {
+                        System.out.println("[ASSET][NOT-MODIFIED][CSS] " + cssUri);
+                        result.incrementNotModified();
+                        assetDone(key, true);
+                        return;
+                    }
+                    String cssText = new String(body.bytes, StandardCharsets.UTF_8);
+                    String rewritten = rewriteCssUrls(cssText, cssUri, outputDir, cssLocal, result);
+                    rewritten = applyReplacements(rewritten, request);
+                    byte[] cssBytes = rewritten.getBytes(StandardCharsets.UTF_8);
+                    String sha256 = blobs.write(cssBytes, cssLocal);
+                    result.incrementAssetsDownloaded();
+                    ValidatorStore validators = validatorStore();
+                    if (validators != null) {
+                        validators.record(cssUri.toString(), body.etag, body.lastModified, cssLocal, sha256);
+                    }
+                    assetDone(key, true);
+                } catch (Exception ex) {
+                    if (stopping()) return;
+                    assetDone(key, false);
+                    result.addError("资源下载失败: " + cssUri + " -> " + ex.getMessage());
+                }
+            }
+        });
     }
 
     private void processInlineStyles(Document doc,
@@ -653,13 +1047,11 @@ public class CrawlService {
                 if (isProtectedSiteAsset(outputDir, abs)) {
 //                    System.out.println("[ASSET][SKIP-PROTECTED][CSS-URL] " + abs);
                     m.appendReplacement(sb, m.group());
-                } else if (!result.tryMarkAsset(key)) {
-//                    System.out.println("[ASSET][SKIP-DUP][CSS-URL] " + key);
-                    m.appendReplacement(sb, m.group());
                 } else {
-                    byte[] bytes = fetchBinary(abs, baseUri);
-                    Files.write(assetLocal, bytes);
-                    result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                    if (markAsset(result, key)) {
+                        scheduleAssetDownload(abs, baseUri, assetLocal, result, "CSS 资源下载失败: ");
+                    }
+                    // 本地路径确定，重复引用同样改写为本地相对路径
                     String rel = computeRelativePath(currentLocalPath.getParent(), assetLocal);
                     String replacement = "url('" + rel.replace("$", "\\$") + "')";
                     m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
@@ -778,11 +1170,12 @@ public class CrawlService {
         return cleaned;
     }
 
+    // 重写 JS 文本中的站内链接，识别出的页面 URL 加入 jsPages
     public String rewriteJsLinksInContent(String jsText,
                                           URI pageUri,
                                           Path outputDir,
                                           Path currentLocalPath,
-                                          CrawlResult result) {
+                                          Collection<String> jsPages) {
         String text = jsText;
 
         // 处理 HTML 片段中的 href/src/action 属性（非转义）
@@ -799,7 +1192,7 @@ public class CrawlService {
                 String targetHost = abs.getHost();
                 String q = quote;
                 // 记录为候选页面
-                if (isLikelyHtml(abs)) result.addJsPage(abs.toString());
+                if (isLikelyHtml(abs)) jsPages.add(abs.toString());
                 if (pageHost != null && targetHost != null && !targetHost.equalsIgnoreCase(pageHost)) {
                     replacement = attr + "=" + q + "/" + q;
                 } else {
@@ -828,7 +1221,7 @@ public class CrawlService {
                 String pageHost = pageUri.getHost();
                 String targetHost = abs.getHost();
                 String escapedQuote = "\\\""; // 统一使用转义双引号
-                if (isLikelyHtml(abs)) result.addJsPage(abs.toString());
+                if (isLikelyHtml(abs)) jsPages.add(abs.toString());
                 if (pageHost != null && targetHost != null && !targetHost.equalsIgnoreCase(pageHost)) {
                     replacement = attr + "=" + escapedQuote + "/" + escapedQuote;
                 } else {
@@ -856,7 +1249,7 @@ public class CrawlService {
                 String pageHost = pageUri.getHost();
                 String targetHost = abs.getHost();
                 String escapedQuote = quote.equals("\"") ? "\\\"" : "\\'";
-                if (isLikelyHtml(abs)) result.addJsPage(abs.toString());
+                if (isLikelyHtml(abs)) jsPages.add(abs.toString());
                 if (pageHost != null && targetHost != null && !targetHost.equalsIgnoreCase(pageHost)) {
                     replacement = "location.href=" + escapedQuote + "/" + escapedQuote;
                 } else {
@@ -884,7 +1277,7 @@ public class CrawlService {
                 String pageHost = pageUri.getHost();
                 String targetHost = abs.getHost();
                 String escapedQuote = quote.equals("\"") ? "\\\"" : "\\'";
-                if (isLikelyHtml(abs)) result.addJsPage(abs.toString());
+                if (isLikelyHtml(abs)) jsPages.add(abs.toString());
                 if (pageHost != null && targetHost != null && !targetHost.equalsIgnoreCase(pageHost)) {
                     replacement = "window.open(" + escapedQuote + "/" + escapedQuote;
                 } else {
@@ -911,7 +1304,7 @@ public class CrawlService {
         text = text.replaceAll("(?i)src=\\\\'(/[^\\\\']*?)/index\\.html\\\\'", "src=\\\\'$1/\\\\'");
 
         // 简单页面 URL 收集：/col/.../index.html 或 /col/.../ 视为页面
-        collectJsPages(text, pageUri, result);
+        collectJsPages(text, pageUri, jsPages);
 
         // 额外处理：直接替换同域绝对 URL（非属性场景），如 "http://host/path..."
         text = rewriteSameDomainQuotedUrls(text, pageUri, outputDir, currentLocalPath);
@@ -920,29 +1313,29 @@ public class CrawlService {
     }
 
     // 收集 JS 文本中潜在页面 URL（用于加入下载）
-    private void collectJsPages(String text, URI pageUri, CrawlResult result) {
+    private void collectJsPages(String text, URI pageUri, Collection<String> jsPages) {
         Pattern P1 = Pattern.compile("(['\\\"])(/[^'\\\"\\\\\\s<>]+/index\\.html)\\1", Pattern.CASE_INSENSITIVE);
         Pattern P2 = Pattern.compile("(['\\\"])(/[^'\\\"\\\\\\s<>]+/)\\1", Pattern.CASE_INSENSITIVE);
         Pattern P3 = Pattern.compile("(['\\\"])(/[^'\\\"\\\\\\s<>]+\\.(?:do|jsp|html))(?:\\?[^'\\\"\\s<>]*)?\\1", Pattern.CASE_INSENSITIVE);
         Pattern P4 = Pattern.compile("(['\\\"])(/[^'\\\"\\\\\\s<>]+(?:\\?[^'\\\"\\s<>]*)?)\\1", Pattern.CASE_INSENSITIVE);
         Matcher p1 = P1.matcher(text);
         while (p1.find()) {
-            try { result.addJsPage(pageUri.resolve(p1.group(2)).toString()); } catch (Exception ignore) {}
+            try { jsPages.add(pageUri.resolve(p1.group(2)).toString()); } catch (Exception ignore) {}
         }
         Matcher p2 = P2.matcher(text);
         while (p2.find()) {
-            try { result.addJsPage(pageUri.resolve(p2.group(2)).toString()); } catch (Exception ignore) {}
+            try { jsPages.add(pageUri.resolve(p2.group(2)).toString()); } catch (Exception ignore) {}
         }
         Matcher p3 = P3.matcher(text);
         while (p3.find()) {
-            try { result.addJsPage(pageUri.resolve(p3.group(2)).toString()); } catch (Exception ignore) {}
+            try { jsPages.add(pageUri.resolve(p3.group(2)).toString()); } catch (Exception ignore) {}
         }
         // 广义收集：仅在判断为页面时加入
         Matcher p4 = P4.matcher(text);
         while (p4.find()) {
             try {
                 URI abs = pageUri.resolve(p4.group(2));
-                if (isLikelyHtml(abs)) result.addJsPage(abs.toString());
+                if (isLikelyHtml(abs)) jsPages.add(abs.toString());
             } catch (Exception ignore) {}
         }
     }
@@ -1040,7 +1433,7 @@ public class CrawlService {
                                     Path currentLocalPath,
                                     CrawlResult result) throws IOException {
         if (jsUri != null) {
-            String key = jsUri.toString();
+            String key = canonicalizer().key(jsUri);
             if (!result.tryMarkJsProcessed(key)) {
 //                System.out.println("[JS-ASSET][SKIP-JS-PROCESSED] " + key);
                 return;
@@ -1217,12 +1610,10 @@ public class CrawlService {
                 URI abs = (jsUri != null ? jsUri : referer).resolve(href);
                 Path local = mapUriToLocalPath(outputDir, abs, false);
                 Files.createDirectories(local.getParent());
-                if (!result.tryMarkAsset(abs.toString())) {
+                if (!markAsset(result, abs.toString())) {
 //                    System.out.println("[ASSET][SKIP-DUP][JS-LINK] " + abs);
                     return; }
-                byte[] bytes = fetchBinary(abs, referer);
-                Files.write(local, bytes);
-                result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                scheduleAssetDownload(abs, referer, local, result, "JS link css 下载失败: ");
 //                System.out.println("[JS-ASSET][DL][LINK] " + abs);
             } catch (Exception e) { result.addError("JS link css 下载失败: " + href + " -> " + e.getMessage()); }
         };
@@ -1232,13 +1623,11 @@ public class CrawlService {
                 URI abs = (jsUri != null ? jsUri : referer).resolve(src);
                 Path local = mapUriToLocalPath(outputDir, abs, false);
                 Files.createDirectories(local.getParent());
-                if (!result.tryMarkAsset(abs.toString())) {
+                if (!markAsset(result, abs.toString())) {
 //                    System.out.println("[ASSET][SKIP-DUP][JS-SCRIPT] " + abs);
                     return; }
-                byte[] bytes = fetchBinary(abs, referer);
                 // 不对下载的 js 再次解析，避免重复扫描；仅保存
-                Files.write(local, bytes);
-                result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                scheduleAssetDownload(abs, referer, local, result, "JS link js 下载失败: ");
 //                System.out.println("[JS-ASSET][DL][SCRIPT] " + abs);
             } catch (Exception e) { result.addError("JS link js 下载失败: " + src + " -> " + e.getMessage()); }
         };
@@ -1296,15 +1685,13 @@ public class CrawlService {
             URI abs = resolveAssetUri(cleaned, base, referer);
             if (!isHttpLike(abs)) return;
             String key = abs.toString();
-            if (!result.tryMarkAsset(key)) {
+            if (!markAsset(result, key)) {
                 System.out.println("[ASSET][SKIP-DUP][" + tag + "] " + key);
                 return;
             }
             Path assetLocal = mapUriToLocalPath(outputDir, abs, false);
             Files.createDirectories(assetLocal.getParent());
-            byte[] bytes = fetchBinary(abs, referer);
-            Files.write(assetLocal, bytes);
-            result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+            scheduleAssetDownload(abs, referer, assetLocal, result, "JS 引用资源下载失败: ");
         } catch (Exception ex) {
             result.addError("JS 引用资源下载失败: " + raw + " -> " + ex.getMessage());
         }
@@ -1317,22 +1704,136 @@ public class CrawlService {
                 lower.endsWith(".gif") || lower.endsWith(".webp") || lower.endsWith(".svg") || lower.endsWith(".ico"));
     }
 
+    // 当前任务的 URL 规范化规则；不在任务中时使用默认规则
+    private static UrlCanonicalizer canonicalizer() {
+        CrawlContext ctx = CrawlContext.current();
+        return ctx != null ? ctx.canonicalizer : UrlCanonicalizer.DEFAULT;
+    }
+
+    private static URI canonical(URI uri) {
+        return canonicalizer().canonicalize(uri);
+    }
+
+    // 以规范化后的 URL 做资产去重
+    private static boolean markAsset(CrawlResult result, String url) {
+        return result.tryMarkAsset(canonicalizer().key(url));
+    }
+
+    // 当前采集任务的 HTTP 会话；不在任务中时使用共享会话
+    private FetchSession httpSession() {
+        CrawlContext ctx = CrawlContext.current();
+        return ctx != null ? ctx.http : httpFetcher.defaultSession();
+    }
+
+    // 当前采集任务的增量校验信息库；未开启增量或不在任务中时为 null
+    private ValidatorStore validatorStore() {
+        CrawlContext ctx = CrawlContext.current();
+        return ctx != null ? ctx.validators : null;
+    }
+
+    private Map<String, String> conditionalHeaders(String url, Path local) {
+        ValidatorStore validators = validatorStore();
+        return validators != null ? validators.conditionalHeaders(url, local) : Collections.<String, String>emptyMap();
+    }
+
+    // 单个资产的字节上限：全局上限与当前任务的上限取较小者（0 表示不限制）
+    private long maxAssetBytes() {
+        long global = httpFetcher.properties().getMaxAssetBytes();
+        CrawlContext ctx = CrawlContext.current();
+        long task = ctx != null ? ctx.request.getMaxAssetBytes() : 0;
+        if (global <= 0) return Math.max(0, task);
+        return task > 0 ? Math.min(global, task) : global;
+    }
+
+    // 当前任务已取消或预算已用完
+    private static boolean stopping() {
+        CrawlContext ctx = CrawlContext.current();
+        return ctx != null && ctx.isStopping();
+    }
+
+    // 读取文本类资源（JS/CSS）的完整内容，需在内存中重写
     private byte[] fetchBinary(URI url, URI referer) throws IOException {
+        final long max = maxAssetBytes();
+        return fetchWithRetry(canonical(url), referer, Collections.<String, String>emptyMap(), new ResponseHandler<byte[]>() {
+            public byte[] handle(FetchResponse res) throws IOException {
+                return res.bodyAsBytes(max);
+            }
+        });
+    }
+
+    // 文本资源内容及其校验信息
+    private static final class TextBody {
+        final byte[] bytes;
+        final String etag;
+        final String lastModified;
+
+        TextBody(byte[] bytes, String etag, String lastModified) {
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // 对本地已有的文本资源发送条件请求；返回 null 表示未变化（304），本地文件可直接复用
+    private TextBody fetchTextIfModified(URI uri, URI referer, Path local) throws IOException {
+        URI url = canonical(uri);
+        final long max = maxAssetBytes();
+        final Map<String, String> conditional = conditionalHeaders(url.toString(), local);
+        return fetchWithRetry(url, referer, conditional, new ResponseHandler<TextBody>() {
+            public TextBody handle(FetchResponse res) throws IOException {
+                if (res.status() == HttpURLConnection.HTTP_NOT_MODIFIED && !conditional.isEmpty()) return null;
+                return new TextBody(res.bodyAsBytes(max), res.etag(), res.lastModified());
+            }
+        });
+    }
+
+    // 二进制资产直接流式落盘，不经过堆内存；返回 false 表示未变化（304），本地文件保持不动
+    private boolean downloadToFile(URI uri, URI referer, final Path target) throws IOException {
+        final URI url = canonical(uri);
+        final long max = maxAssetBytes();
+        final Map<String, String> conditional = conditionalHeaders(url.toString(), target);
+        return fetchWithRetry(url, referer, conditional, new ResponseHandler<Boolean>() {
+            public Boolean handle(FetchResponse res) throws IOException {
+                if (res.status() == HttpURLConnection.HTTP_NOT_MODIFIED && !conditional.isEmpty()) return false;
+                FetchResponse.Saved saved = res.saveTo(target, max);
+                blobs.adopt(target, saved.sha256);
+                ValidatorStore validators = validatorStore();
+                if (validators != null) {
+                    validators.record(url.toString(), res.etag(), res.lastModified(), target, saved.sha256);
+                }
+                return true;
+            }
+        });
+    }
+
+    private interface ResponseHandler<T> {
+        T handle(FetchResponse res) throws IOException;
+    }
+
+    private <T> T fetchWithRetry(URI url, URI referer, Map<String, String> headers, ResponseHandler<T> handler) throws IOException {
+        FetchSession http = httpSession();
         int attempts = 0;
         IOException last = null;
         while (attempts < 3) {
             attempts++;
             try {
-                return Jsoup.connect(url.toString())
-                        .ignoreContentType(true)
-                        .timeout(30000)
-                        .header("Referer", referer == null ? url.toString() : referer.toString())
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0 Safari/537.36")
-                        .ignoreHttpErrors(true)
-                        .maxBodySize(0)
-                        .execute()
-                        .bodyAsBytes();
+                FetchResponse res = http.get(url, referer == null ? url : referer, false, headers);
+                try {
+                    if (res.status() == 404 || res.status() == 410) {
+                        // 永久失效：不重试，也不把错误页当作资源保存
+                        throw new FetchRejectedException("HTTP " + res.status() + ": " + url);
+                    }
+                    return handler.handle(res);
+                } finally {
+                    res.close();
+                }
+            } catch (FetchRejectedException ex) {
+                throw ex;
+            } catch (UnknownHostException ex) {
+                throw ex;
             } catch (IOException ex) {
+                // 任务已停止（含断开在途连接后的读取失败）：不再等待重试；读取超时仍按普通错误重试
+                if (http.isAborted() || stopping()) throw ex;
                 last = ex;
                 try { Thread.sleep(500L * attempts); } catch (InterruptedException ignored) { Thread.currentThread().interrupt(); throw new IOException("interrupted", last); }
             }
@@ -1391,16 +1892,14 @@ public class CrawlService {
                     if (rebuilt.length() > 0) rebuilt.append(", ");
                     rebuilt.append(rel);
                     if (!isBlank(descriptor)) rebuilt.append(' ').append(descriptor);
-                } else if (!result.tryMarkAsset(key)) {
+                } else if (!markAsset(result, key)) {
                     System.out.println("[ASSET][SKIP-DUP][SRCSET] " + key);
                     String rel = computeRelativePath(currentLocalPath.getParent(), assetLocal);
                     if (rebuilt.length() > 0) rebuilt.append(", ");
                     rebuilt.append(rel);
                     if (!isBlank(descriptor)) rebuilt.append(' ').append(descriptor);
                 } else {
-                    byte[] bytes = fetchBinary(abs, baseUri);
-                    Files.write(assetLocal, bytes);
-                    result.setAssetsDownloaded(result.getAssetsDownloaded() + 1);
+                    scheduleAssetDownload(abs, baseUri, assetLocal, result, "srcset 下载失败: ");
                     String rel = computeRelativePath(currentLocalPath.getParent(), assetLocal);
                     if (rebuilt.length() > 0) rebuilt.append(", ");
                     rebuilt.append(rel);
@@ -1458,16 +1957,16 @@ public class CrawlService {
     }
 
     private void copyClasspathAsset(String resourcePath, Path target) throws IOException {
-        java.io.InputStream in = null; java.io.OutputStream out = null;
+        java.io.InputStream in = CrawlService.class.getResourceAsStream(resourcePath);
+        if (in == null) throw new IOException("资源不存在: " + resourcePath);
         try {
-            in = CrawlService.class.getResourceAsStream(resourcePath);
-            if (in == null) throw new IOException("资源不存在: " + resourcePath);
-            out = Files.newOutputStream(target);
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
             byte[] buf = new byte[8192]; int r;
             while ((r = in.read(buf)) != -1) out.write(buf, 0, r);
+            // 每个克隆都带同样的 favicon/js，交给内容库去重
+            blobs.write(out.toByteArray(), target);
         } finally {
-            if (in != null) try { in.close(); } catch (IOException ignore) {}
-            if (out != null) try { out.close(); } catch (IOException ignore) {}
+            try { in.close(); } catch (IOException ignore) {}
         }
     }
 
@@ -1526,6 +2025,8 @@ public class CrawlService {
     }
 
     private static Path mapUriToLocalPath(Path outputRoot, URI uri, boolean isHtml) {
+        // 同一资源的不同写法映射到同一个本地文件
+        uri = canonical(uri);
         String host = uri.getHost() == null ? "unknown-host" : uri.getHost();
         String rawPath = uri.getPath();
         if (rawPath == null || rawPath.trim().isEmpty() || "/".equals(rawPath)) {
@@ -1577,6 +2078,17 @@ public class CrawlService {
         return outputRoot.resolve(path);
     }
 
+    // 在 at 处写一个立即跳转到 target 的页面（相对路径，离线打开也能跳转）
+    private void writeRedirectPage(Path at, Path target) throws IOException {
+        String href = computeRelativePath(at.getParent(), target);
+        String html = "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">"
+                + "<meta http-equiv=\"refresh\" content=\"0; url=" + href + "\"></head>"
+                + "<body><a href=\"" + href + "\">" + href + "</a></body></html>\n";
+        Files.createDirectories(at.getParent());
+        blobs.write(html.getBytes(StandardCharsets.UTF_8), at);
+        System.out.println("[PAGE][REDIRECT] " + at + " -> " + href);
+    }
+
     private static String computeRelativePath(Path fromDir, Path target) {
         Path rel = fromDir.relativize(target);
         String s = rel.toString();
@@ -0,0 +1,59 @@
+package com.example.sitecloner.service;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 采集相关线程（任务 worker、页面 worker、资产 worker）的创建入口，由全局 {@link HttpFetcher} 持有。
+ *
+ * 开启虚拟线程（sitecloner.fetch.virtual-threads）且运行在 JDK 21 及以上时，这些线程都是虚拟线程：
+ * 阻塞在网络 I/O 上不占用平台线程，同时在途的请求数只受主机限流与全局连接数上限约束。
+ * 项目仍按 Java 8 编译，虚拟线程通过反射创建；JDK 不支持时打印提示并退回普通的守护线程。
+ * 虚拟线程在 synchronized 块内等待会占住载体线程，因此会长时间等待的地方（主机限流、前沿队列、资产排空）使用 Lock/Condition。
+ */
+class CrawlThreads {
+
+    // Thread.ofVirtual().factory()；未开启或 JDK 不支持时为 null
+    private final ThreadFactory virtualFactory;
+
+    CrawlThreads(boolean virtual) {
+        ThreadFactory factory = null;
+        if (virtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            } catch (Exception e) {
+                System.out.println("[THREAD][MODE] 当前 JDK（" + System.getProperty("java.version") + "）不支持虚拟线程，使用平台线程");
+            }
+        }
+        this.virtualFactory = factory;
+        System.out.println("[THREAD][MODE] " + (isVirtual() ? "virtual" : "platform"));
+    }
+
+    boolean isVirtual() {
+        return virtualFactory != null;
+    }
+
+    // 创建（未启动的）线程；平台线程设为守护线程，虚拟线程本身即为守护线程
+    Thread newThread(Runnable r, String name) {
+        Thread t;
+        if (isVirtual()) {
+            t = virtualFactory.newThread(r);
+        } else {
+            t = new Thread(r);
+            t.setDaemon(true);
+        }
+        t.setName(name);
+        return t;
+    }
+
+    // 线程名为 prefix + 序号（从 1 开始）
+    ThreadFactory factory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                return CrawlThreads.this.newThread(r, prefix + seq.incrementAndGet());
+            }
+        };
+    }
+}
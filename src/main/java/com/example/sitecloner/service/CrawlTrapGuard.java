@@ -0,0 +1,94 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlRequest;
+import com.example.sitecloner.model.FingerprintSet;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个任务内的爬虫陷阱防护：在链接入队前拦截无限增长的 URL 族，让前沿队列在异常站点上也有上限。
+ *
+ * 四道检查（阈值取自请求，0 表示不限制）：
+ * 路径段数过深；同一路径段重复出现过多（/a/b/a/b/a/...，常见于相对链接写错）；
+ * 同一路径下不同查询串过多（排序、筛选参数的排列组合）；同一 URL 模板下的 URL 过多（没有尽头的分页、日历）。
+ * 模板与近似重复检测共用 {@link NearDuplicateDetector#pattern(URI)}。
+ * 只统计首次放行的 URL：同一链接被多个页面引用不会重复计数。
+ */
+class CrawlTrapGuard {
+
+    enum Trap { DEPTH, REPEAT, QUERY, TEMPLATE }
+
+    private final int maxPathDepth;
+    private final int maxRepeatedSegments;
+    private final int maxQueryVariants;
+    private final int maxUrlsPerTemplate;
+    private final FingerprintSet admitted = new FingerprintSet();
+    private final Map<String, Integer> queryVariants = new HashMap<>();
+    private final Map<String, Integer> templateUrls = new HashMap<>();
+    // 已提示过的路径与模板，每个只打印一次汇总日志
+    private final Set<String> reported = new HashSet<>();
+
+    CrawlTrapGuard(CrawlRequest request) {
+        this.maxPathDepth = request.getMaxPathDepth();
+        this.maxRepeatedSegments = request.getMaxRepeatedSegments();
+        this.maxQueryVariants = request.getMaxQueryVariantsPerPath();
+        this.maxUrlsPerTemplate = request.getMaxUrlsPerTemplate();
+    }
+
+    /**
+     * 判断链接能否入队；放行时登记计数并返回 null，否则返回命中的陷阱类型。
+     */
+    synchronized Trap check(URI uri) {
+        String key = uri.toString();
+        if (admitted.contains(key)) return null;
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        Trap trap = checkPath(path);
+        String pathKey = uri.getHost() + path;
+        String template = NearDuplicateDetector.pattern(uri);
+        boolean hasQuery = uri.getRawQuery() != null && !uri.getRawQuery().isEmpty();
+        if (trap == null && hasQuery && over(queryVariants, pathKey, maxQueryVariants)) trap = Trap.QUERY;
+        if (trap == null && over(templateUrls, template, maxUrlsPerTemplate)) trap = Trap.TEMPLATE;
+        if (trap != null) {
+            String scope = trap == Trap.QUERY ? pathKey : trap == Trap.TEMPLATE ? template : null;
+            if (scope != null && reported.add(trap + " " + scope)) {
+                int limit = trap == Trap.QUERY ? maxQueryVariants : maxUrlsPerTemplate;
+                System.out.println("[TRAP][LIMIT] " + trap + " 已达上限 " + limit + "，后续不再入队: " + scope);
+            }
+            return trap;
+        }
+        admitted.add(key);
+        if (hasQuery) increment(queryVariants, pathKey);
+        increment(templateUrls, template);
+        return null;
+    }
+
+    private Trap checkPath(String path) {
+        Map<String, Integer> seen = new HashMap<>();
+        int depth = 0;
+        for (String seg : path.split("/")) {
+            if (seg.isEmpty()) continue;
+            depth++;
+            Integer n = seen.get(seg);
+            n = n == null ? 1 : n + 1;
+            seen.put(seg, n);
+            if (maxRepeatedSegments > 0 && n > maxRepeatedSegments) return Trap.REPEAT;
+        }
+        if (maxPathDepth > 0 && depth > maxPathDepth) return Trap.DEPTH;
+        return null;
+    }
+
+    private static boolean over(Map<String, Integer> counts, String key, int limit) {
+        if (limit <= 0) return false;
+        Integer n = counts.get(key);
+        return n != null && n >= limit;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer n = counts.get(key);
+        counts.put(key, n == null ? 1 : n + 1);
+    }
+}
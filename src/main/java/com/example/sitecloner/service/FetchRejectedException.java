@@ -0,0 +1,15 @@
+package com.example.sitecloner.service;
+
+import java.io.IOException;
+
+/**
+ * 请求因超出限制被主动放弃（如资源过大），重试也不会成功。
+ */
+class FetchRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    FetchRejectedException(String message) {
+        super(message);
+    }
+}
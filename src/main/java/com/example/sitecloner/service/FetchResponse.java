@@ -0,0 +1,403 @@
+package com.example.sitecloner.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 一次 HTTP 响应。响应体按 Content-Encoding 解压后以流的形式读取；
+ * 读完并 {@link #close()} 后底层连接回到 keep-alive 池。
+ * 也可能来自共享的 {@link HttpCache}：此时没有连接，响应头取自缓存条目；
+ * 可缓存的网络响应在读取时同步写入缓存。
+ */
+class FetchResponse implements Closeable {
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
+    private static final int SNIFF_BYTES = 512;
+    private static final Pattern HTML_SNIFF_PATTERN = Pattern.compile("(?i)<(?:!doctype\\s+html|html|head|body|title|meta|script|div|a\\s|p>|table|!--)");
+
+    // 响应体的大致类别：HTML 走解析，其余按资源保存
+    enum BodyKind { HTML, TEXT, BINARY }
+
+    // 发出请求的会话（负责预算计量与在途连接登记）；缓存应答时为 null
+    private final FetchSession session;
+    private final HttpURLConnection conn;
+    private final URI url;
+    private final int status;
+    private final HostRateLimiter.Permit permit;
+    // 缓存命中时的条目与响应体；网络响应时为 null
+    private final HttpCache.Entry cached;
+    private final InputStream cachedBody;
+    // 网络响应边读边写入缓存；不可缓存时为 null
+    private final HttpCache.Writer cacheWriter;
+    private InputStream body;
+    private volatile boolean aborted;
+
+    FetchResponse(FetchSession session, HttpURLConnection conn, URI url, int status, HostRateLimiter.Permit permit) {
+        this(session, conn, url, status, permit, null);
+    }
+
+    FetchResponse(FetchSession session, HttpURLConnection conn, URI url, int status, HostRateLimiter.Permit permit,
+                  HttpCache.Writer cacheWriter) {
+        this.session = session;
+        this.conn = conn;
+        this.url = url;
+        this.status = status;
+        this.permit = permit;
+        this.cached = null;
+        this.cachedBody = null;
+        this.cacheWriter = cacheWriter;
+    }
+
+    // 由缓存应答：status 为 200（带缓存的响应体）或 304（调用方的校验信息与缓存一致）
+    FetchResponse(HttpCache.Entry cached, InputStream cachedBody, URI url, int status) {
+        this.session = null;
+        this.conn = null;
+        this.url = url;
+        this.status = status;
+        this.permit = null;
+        this.cached = cached;
+        this.cachedBody = cachedBody;
+        this.cacheWriter = null;
+    }
+
+    boolean fromCache() {
+        return cached != null;
+    }
+
+    int status() {
+        return status;
+    }
+
+    // 最终地址（跟随重定向后）
+    URI url() {
+        return url;
+    }
+
+    String header(String name) {
+        if (conn != null) return conn.getHeaderField(name);
+        if (name.equalsIgnoreCase("ETag")) return cached.etag;
+        if (name.equalsIgnoreCase("Last-Modified")) return cached.lastModified;
+        if (name.equalsIgnoreCase("Content-Type")) return cached.contentType;
+        return null;
+    }
+
+    String contentType() {
+        return conn != null ? conn.getContentType() : cached.contentType;
+    }
+
+    String etag() {
+        return header("ETag");
+    }
+
+    String lastModified() {
+        return header("Last-Modified");
+    }
+
+    long contentLength() {
+        if (conn == null) return status == HttpURLConnection.HTTP_OK ? cached.size : 0;
+        return conn.getContentLengthLong();
+    }
+
+    String charset() {
+        String ct = contentType();
+        if (ct == null) return null;
+        Matcher m = CHARSET_PATTERN.matcher(ct);
+        if (!m.find()) return null;
+        String cs = m.group(1).trim();
+        try {
+            return Charset.isSupported(cs) ? cs : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    InputStream body() throws IOException {
+        if (body != null) return body;
+        InputStream raw;
+        if (conn == null) {
+            // 缓存中保存的是解压后的响应体
+            raw = cachedBody != null ? cachedBody : new ByteArrayInputStream(new byte[0]);
+        } else if (status == HttpURLConnection.HTTP_NO_CONTENT || status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            raw = new ByteArrayInputStream(new byte[0]);
+        } else {
+            raw = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (raw == null) raw = new ByteArrayInputStream(new byte[0]);
+            // 任务预算按传输的（压缩）字节计
+            CrawlBudget budget = session == null ? null : session.budget();
+            if (budget != null) raw = budget.meter(raw);
+            String encoding = conn.getContentEncoding();
+            if (encoding != null) {
+                encoding = encoding.trim().toLowerCase();
+                if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+                    raw = new GZIPInputStream(raw, 8192);
+                } else if (encoding.equals("deflate")) {
+                    raw = inflate(raw);
+                }
+            }
+            if (cacheWriter != null) raw = cacheWriter.wrap(raw);
+        }
+        body = new BufferedInputStream(raw, 8192);
+        return body;
+    }
+
+    // deflate 既可能是带 zlib 头的，也可能是裸 deflate 流（部分服务器的实现），按首字节区分
+    private static InputStream inflate(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, 8192);
+        in.mark(2);
+        int first = in.read();
+        in.reset();
+        boolean zlib = first != -1 && (first & 0x0F) == 8;
+        return new InflaterInputStream(in, new Inflater(!zlib), 8192);
+    }
+
+    byte[] bodyAsBytes() throws IOException {
+        return bodyAsBytes(0);
+    }
+
+    // 读取完整响应体；maxBytes > 0 时超出上限即中止连接
+    byte[] bodyAsBytes(long maxBytes) throws IOException {
+        checkDeclaredLength(maxBytes);
+        InputStream in = body();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        long total = 0;
+        int r;
+        while ((r = in.read(buf)) != -1) {
+            total += r;
+            checkReadLength(total, maxBytes);
+            out.write(buf, 0, r);
+        }
+        return out.toByteArray();
+    }
+
+    // 落盘结果：字节数与内容的 SHA-256（边写边算）
+    static final class Saved {
+        final long size;
+        final String sha256;
+
+        Saved(long size, String sha256) {
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * 将响应体按固定大小的块流式写入目标目录下的临时文件，完成后原子移动到目标位置。
+     * 无论文件多大，占用的堆内存只有一个缓冲区；失败时删除临时文件，目标文件保持不变。
+     */
+    Saved saveTo(Path target, long maxBytes) throws IOException {
+        checkDeclaredLength(maxBytes);
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // 不用 createTempFile：其 0600 权限会随移动带到最终文件上
+        Path tmp = dir.resolve("." + target.getFileName().toString() + "." + Long.toHexString(System.nanoTime()) + ".part");
+        boolean moved = false;
+        try {
+            long total = 0;
+            InputStream in = body();
+            MessageDigest digest = ValidatorStore.newSha256();
+            OutputStream out = new DigestOutputStream(
+                    Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), digest);
+            try {
+                byte[] buf = new byte[8192];
+                int r;
+                while ((r = in.read(buf)) != -1) {
+                    total += r;
+                    checkReadLength(total, maxBytes);
+                    out.write(buf, 0, r);
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            return new Saved(total, ValidatorStore.toHex(digest.digest()));
+        } finally {
+            if (!moved) Files.deleteIfExists(tmp);
+        }
+    }
+
+    // 响应头声明的长度已超限：不读取响应体，直接断开
+    private void checkDeclaredLength(long maxBytes) throws IOException {
+        long declared = contentLength();
+        if (maxBytes > 0 && declared > maxBytes) {
+            abort();
+            throw new FetchRejectedException("资源大小 " + declared + " 超过上限 " + maxBytes + ": " + url);
+        }
+    }
+
+    private void checkReadLength(long total, long maxBytes) throws IOException {
+        if (maxBytes > 0 && total > maxBytes) {
+            abort();
+            throw new FetchRejectedException("资源大小超过上限 " + maxBytes + ": " + url);
+        }
+    }
+
+    // 以响应头中的字符集（缺省时由 Jsoup 根据 BOM/meta 探测）解析为文档，基准地址为最终地址
+    Document parse() throws IOException {
+        return parse(0);
+    }
+
+    // maxBytes > 0 时，响应体超出上限即中止连接，不把超大文档读进内存
+    Document parse(final long maxBytes) throws IOException {
+        checkDeclaredLength(maxBytes);
+        InputStream in = body();
+        if (maxBytes > 0) {
+            in = new FilterInputStream(in) {
+                private long total;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) checkReadLength(++total, maxBytes);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int r = super.read(b, off, len);
+                    if (r > 0) {
+                        total += r;
+                        checkReadLength(total, maxBytes);
+                    }
+                    return r;
+                }
+            };
+        }
+        return Jsoup.parse(in, charset(), url.toString());
+    }
+
+    /**
+     * 判断响应体类别：先看 Content-Type，声明缺失、泛化（octet-stream）或与内容不符时再嗅探前 512 字节。
+     * 嗅探只预读缓冲区，不消耗响应体。
+     */
+    BodyKind kind() throws IOException {
+        String ct = contentType();
+        String mime = ct == null ? "" : ct.toLowerCase().split(";", 2)[0].trim();
+        byte[] head = peek(SNIFF_BYTES);
+        if (isBinaryMagic(head)) return BodyKind.BINARY;
+        if (mime.equals("text/html") || mime.equals("application/xhtml+xml")) return BodyKind.HTML;
+        boolean generic = mime.isEmpty() || mime.equals("application/octet-stream") || mime.equals("binary/octet-stream")
+                || mime.equals("text/plain") || mime.equals("application/unknown");
+        if (!generic) {
+            return mime.startsWith("text/") || mime.contains("xml") || mime.contains("json") || mime.contains("javascript")
+                    ? BodyKind.TEXT : BodyKind.BINARY;
+        }
+        for (byte b : head) {
+            if (b == 0) return BodyKind.BINARY;
+        }
+        String text = new String(head, StandardCharsets.ISO_8859_1);
+        if (HTML_SNIFF_PATTERN.matcher(text).find()) return BodyKind.HTML;
+        return mime.equals("text/plain") || looksLikeText(head) ? BodyKind.TEXT : BodyKind.BINARY;
+    }
+
+    // 预读至多 n 个字节后复位，后续读取仍从头开始
+    private byte[] peek(int n) throws IOException {
+        InputStream in = body();
+        in.mark(n);
+        byte[] buf = new byte[n];
+        int total = 0;
+        try {
+            int r;
+            while (total < n && (r = in.read(buf, total, n - total)) != -1) {
+                total += r;
+            }
+        } finally {
+            in.reset();
+        }
+        return Arrays.copyOf(buf, total);
+    }
+
+    private static boolean isBinaryMagic(byte[] h) {
+        return startsWith(h, 0x89, 'P', 'N', 'G')              // PNG
+                || startsWith(h, 0xFF, 0xD8, 0xFF)             // JPEG
+                || startsWith(h, 'G', 'I', 'F', '8')           // GIF
+                || startsWith(h, '%', 'P', 'D', 'F')           // PDF
+                || startsWith(h, 'P', 'K', 0x03, 0x04)         // ZIP / docx / xlsx
+                || startsWith(h, 0x1F, 0x8B)                   // GZIP
+                || startsWith(h, 'R', 'a', 'r', '!')           // RAR
+                || startsWith(h, '7', 'z', 0xBC, 0xAF)         // 7z
+                || startsWith(h, 0xD0, 0xCF, 0x11, 0xE0)       // doc / xls / ppt
+                || startsWith(h, 'R', 'I', 'F', 'F')           // webp / wav / avi
+                || startsWith(h, 'I', 'D', '3')                // mp3
+                || startsWith(h, 'O', 'g', 'g', 'S')           // ogg
+                || startsWith(h, 'M', 'Z')                     // exe
+                || startsWith(h, 'w', 'O', 'F', 'F')           // woff
+                || startsWith(h, 'w', 'O', 'F', '2')           // woff2
+                || (h.length >= 8 && h[4] == 'f' && h[5] == 't' && h[6] == 'y' && h[7] == 'p'); // mp4 / mov
+    }
+
+    private static boolean startsWith(byte[] h, int... magic) {
+        if (h.length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((h[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+
+    // 控制字符（除制表、换行等）占比很低时视为文本
+    private static boolean looksLikeText(byte[] h) {
+        if (h.length == 0) return true;
+        int control = 0;
+        for (byte b : h) {
+            int c = b & 0xFF;
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' && c != '\f' && c != 0x1B) control++;
+        }
+        return control * 20 < h.length;
+    }
+
+    // 关闭后归还主机限流名额
+    @Override
+    public void close() {
+        if (aborted) return;
+        try {
+            body().close();
+        } catch (IOException ignore) {
+        } finally {
+            if (session != null) session.released(conn);
+            if (permit != null) permit.release();
+        }
+    }
+
+    // 立即断开底层连接（不再复用）；未读完的缓存写入随之丢弃
+    void abort() {
+        aborted = true;
+        if (cacheWriter != null) cacheWriter.discard();
+        if (conn != null) conn.disconnect();
+        if (session != null) session.released(conn);
+        if (cachedBody != null) {
+            try { cachedBody.close(); } catch (IOException ignore) {}
+        }
+        if (permit != null) permit.release();
+    }
+}
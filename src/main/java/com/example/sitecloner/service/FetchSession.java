@@ -0,0 +1,294 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.FetchProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单个采集任务的 HTTP 会话：持有该任务的 Cookie，并手动处理重定向（以便跨协议跳转与逐跳记录 Cookie）。
+ * 每一跳请求前都向全局 {@link HostRateLimiter} 申请该主机的名额；429/503 按 Retry-After 等待后重试。
+ * 请求前还会检查全局 {@link HostCircuitBreaker} 与本会话的失效缓存：
+ * 返回 404/410 的 URL 与 DNS 解析失败的主机在整个任务内直接失败，不再发出请求。
+ * 每一跳先查共享的 {@link HttpCache}：新鲜的条目直接应答，过期的条目改发缓存的校验信息。
+ * 采集任务的会话还负责该任务的 {@link CrawlBudget}，并登记在途连接：
+ * 任务取消时 {@link #abortAll()} 直接断开这些连接，阻塞在读取上的 worker 立即失败返回，不必等到超时。
+ */
+class FetchSession {
+
+    private static final int MAX_REDIRECTS = 10;
+    private static final String PAGE_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+
+    private final HttpFetcher fetcher;
+    private final CookieManager cookies = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+    // 失效缓存：URL/主机 → 原因；为 null 时不缓存（共享会话）
+    private final Map<String, String> deadUrls;
+    private final Map<String, String> deadHosts;
+    // 在途（已打开、响应体尚未关闭）的连接
+    private final Set<HttpURLConnection> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile CrawlBudget budget;
+    private volatile boolean aborted;
+
+    FetchSession(HttpFetcher fetcher, boolean negativeCache) {
+        this.fetcher = fetcher;
+        this.deadUrls = negativeCache ? new ConcurrentHashMap<String, String>() : null;
+        this.deadHosts = negativeCache ? new ConcurrentHashMap<String, String>() : null;
+    }
+
+    CrawlThreads threads() {
+        return fetcher.threads();
+    }
+
+    // 任务预算，每次发出网络请求前检查；为 null 时不限制
+    void useBudget(CrawlBudget budget) {
+        this.budget = budget;
+    }
+
+    CrawlBudget budget() {
+        return budget;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * 断开所有在途连接，之后的请求直接失败（任务取消或预算用完时调用）。
+     * 连接建立阶段无法打断，最多等到连接超时。
+     */
+    void abortAll() {
+        aborted = true;
+        int n = 0;
+        for (HttpURLConnection conn : inFlight) {
+            if (inFlight.remove(conn)) {
+                conn.disconnect();
+                n++;
+            }
+        }
+        if (n > 0) System.out.println("[FETCH][ABORT] 断开在途连接 " + n + " 个");
+    }
+
+    // 响应关闭或中止后注销连接
+    void released(HttpURLConnection conn) {
+        inFlight.remove(conn);
+    }
+
+    FetchResponse get(URI url, URI referer, boolean page) throws IOException {
+        return get(url, referer, page, Collections.<String, String>emptyMap());
+    }
+
+    FetchResponse get(URI url, URI referer, boolean page, Map<String, String> extraHeaders) throws IOException {
+        FetchProperties props = fetcher.properties();
+        int timeout = page ? props.getPageTimeoutMillis() : props.getAssetTimeoutMillis();
+        URI current = url;
+        int redirects = 0;
+        int throttled = 0;
+        HttpCache cache = fetcher.cache();
+        // 带 Range 等非常规请求头的请求不走缓存
+        boolean cacheable = cache != null && !extraHeaders.containsKey("Range");
+        while (redirects <= MAX_REDIRECTS) {
+            HttpCache.Entry cached = cacheable ? cache.lookup(current) : null;
+            if (cached != null && cached.isFresh()) {
+                FetchResponse hit = fromCache(cache, cached, current, extraHeaders, false);
+                if (hit != null) return hit;
+                cached = null;
+            }
+            checkNegative(current);
+            CrawlBudget b = budget;
+            if (b != null) b.beforeRequest();
+            checkAborted(current);
+            String host = current.getHost();
+            boolean probe = fetcher.breaker().check(current);
+            boolean reached = false;
+            HostRateLimiter.Permit permit;
+            HttpURLConnection conn;
+            int status;
+            boolean credentialed;
+            Map<String, String> headers = cached != null && cached.hasValidators()
+                    ? HttpCache.validators(cached, extraHeaders) : extraHeaders;
+            try {
+                permit = fetcher.limiter().acquire(host);
+                conn = null;
+                try {
+                    conn = open(current, page, timeout, referer, headers);
+                    // 带会话 Cookie 或认证信息的请求，响应可能因人而异，不写入共享缓存（Authorization 无法从连接上读回）
+                    credentialed = conn.getRequestProperty("Cookie") != null || headerOf(headers, "Authorization") != null;
+                    inFlight.add(conn);
+                    // 登记前恰好被中止的情况
+                    checkAborted(current);
+                    status = conn.getResponseCode();
+                } catch (IOException ex) {
+                    if (conn != null) released(conn);
+                    if (aborted) {
+                        // 被本任务主动断开，不是主机的问题：只归还名额，不计入限流器的连接失败
+                        permit.release();
+                        throw new InterruptedIOException("任务已停止: " + current);
+                    }
+                    permit.complete(-1, null);
+                    permit.release();
+                    onConnectFailure(current, ex);
+                    throw ex;
+                } catch (RuntimeException ex) {
+                    if (conn != null) released(conn);
+                    permit.release();
+                    throw ex;
+                }
+                fetcher.breaker().onSuccess(current);
+                reached = true;
+            } finally {
+                // 探测请求被取消、中断或异常结束：没有结论，归还探测名额（已记为失败的不受影响）
+                if (probe && !reached) fetcher.breaker().abandonProbe(current);
+            }
+            permit.complete(status, conn.getHeaderField("Retry-After"));
+            if (status == 404 || status == 410) {
+                markDead(url, "HTTP " + status);
+                if (!current.equals(url)) markDead(current, "HTTP " + status);
+            }
+            storeCookies(current, conn);
+            if ((status == 429 || status == 503) && throttled < props.getThrottleRetries()) {
+                // 限流器已记录退避时间，下一次 acquire 会等到允许为止
+                throttled++;
+                System.out.println("[FETCH][THROTTLED] status=" + status + ", retry=" + throttled + " -> " + current);
+                new FetchResponse(this, conn, current, status, permit).close();
+                continue;
+            }
+            String location = conn.getHeaderField("Location");
+            if (status >= 300 && status < 400 && status != 304 && location != null) {
+                new FetchResponse(this, conn, current, status, permit).close();
+                current = resolveLocation(current, location);
+                redirects++;
+                continue;
+            }
+            if (cached != null && status == HttpURLConnection.HTTP_NOT_MODIFIED && headers != extraHeaders) {
+                // 缓存内容仍然有效：刷新新鲜度后由缓存应答
+                cache.refresh(cached, conn, page);
+                new FetchResponse(this, conn, current, status, permit).close();
+                FetchResponse hit = fromCache(cache, cached, current, extraHeaders, true);
+                if (hit != null) return hit;
+                // 缓存文件恰好被淘汰：去掉缓存的校验信息重新请求
+                cacheable = false;
+                continue;
+            }
+            if (cacheable) cache.recordMiss();
+            HttpCache.Writer writer = cacheable && status == HttpURLConnection.HTTP_OK ? cache.begin(current, conn, page, credentialed) : null;
+            return new FetchResponse(this, conn, current, status, permit, writer);
+        }
+        throw new IOException("重定向次数过多: " + url);
+    }
+
+    /**
+     * 由缓存应答。调用方自带的校验信息与缓存条目一致时返回 304（调用方本地文件即为该内容），否则返回 200。
+     * 需要响应体而缓存文件已被淘汰时返回 null。
+     */
+    private static FetchResponse fromCache(HttpCache cache, HttpCache.Entry e, URI url, Map<String, String> callerHeaders,
+                                           boolean revalidated) {
+        String inm = headerOf(callerHeaders, "If-None-Match");
+        String ims = headerOf(callerHeaders, "If-Modified-Since");
+        boolean matches = (inm != null && inm.equals(e.etag)) || (inm == null && ims != null && ims.equals(e.lastModified));
+        if (matches) {
+            cache.recordHit(revalidated, 0);
+            return new FetchResponse(e, null, url, HttpURLConnection.HTTP_NOT_MODIFIED);
+        }
+        InputStream body = cache.open(e);
+        if (body == null) return null;
+        cache.recordHit(revalidated, e.size);
+        return new FetchResponse(e, body, url, HttpURLConnection.HTTP_OK);
+    }
+
+    private static String headerOf(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            if (h.getKey().equalsIgnoreCase(name)) return h.getValue();
+        }
+        return null;
+    }
+
+    private void checkAborted(URI uri) throws InterruptedIOException {
+        if (aborted) throw new InterruptedIOException("任务已停止: " + uri);
+    }
+
+    private void checkNegative(URI uri) throws FetchRejectedException {
+        if (deadUrls == null) return;
+        String reason = deadUrls.get(uri.toString());
+        if (reason == null && uri.getHost() != null) reason = deadHosts.get(uri.getHost().toLowerCase(Locale.ROOT));
+        if (reason != null) {
+            throw new FetchRejectedException("已知失效（" + reason + "）: " + uri);
+        }
+    }
+
+    private void markDead(URI uri, String reason) {
+        if (deadUrls == null) return;
+        if (deadUrls.putIfAbsent(uri.toString(), reason) == null) {
+            System.out.println("[NEGATIVE][URL] " + reason + " -> " + uri);
+        }
+    }
+
+    // 连接级失败计入熔断；DNS 解析失败的主机在本任务内不再请求。取消导致的中断不计
+    private void onConnectFailure(URI uri, IOException ex) {
+        if (ex instanceof InterruptedIOException && !(ex instanceof SocketTimeoutException)) return;
+        fetcher.breaker().onFailure(uri);
+        if (ex instanceof UnknownHostException && deadHosts != null && uri.getHost() != null) {
+            if (deadHosts.putIfAbsent(uri.getHost().toLowerCase(Locale.ROOT), "DNS 解析失败") == null) {
+                System.out.println("[NEGATIVE][HOST] DNS 解析失败 -> " + uri.getHost());
+            }
+        }
+    }
+
+    private HttpURLConnection open(URI current, boolean page, int timeout, URI referer,
+                                   Map<String, String> extraHeaders) throws IOException {
+        FetchProperties props = fetcher.properties();
+        HttpURLConnection conn = (HttpURLConnection) new URL(current.toASCIIString()).openConnection();
+        conn.setInstanceFollowRedirects(false);
+        conn.setUseCaches(false);
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        conn.setRequestProperty("User-Agent", props.getUserAgent());
+        conn.setRequestProperty("Accept", page ? PAGE_ACCEPT : "*/*");
+        conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        if (referer != null) conn.setRequestProperty("Referer", referer.toString());
+        for (Map.Entry<String, String> h : extraHeaders.entrySet()) {
+            conn.setRequestProperty(h.getKey(), h.getValue());
+        }
+        addCookies(current, conn);
+        return conn;
+    }
+
+    private void addCookies(URI uri, HttpURLConnection conn) throws IOException {
+        Map<String, List<String>> found = cookies.get(uri, Collections.<String, List<String>>emptyMap());
+        List<String> values = found.get("Cookie");
+        if (values != null && !values.isEmpty()) {
+            conn.setRequestProperty("Cookie", String.join("; ", values));
+        }
+    }
+
+    private void storeCookies(URI uri, HttpURLConnection conn) {
+        try {
+            cookies.put(uri, conn.getHeaderFields());
+        } catch (Exception ignore) {}
+    }
+
+    private static URI resolveLocation(URI base, String location) throws IOException {
+        try {
+            return base.resolve(location.trim());
+        } catch (IllegalArgumentException ex) {
+            try {
+                return base.resolve(location.trim().replace(" ", "%20"));
+            } catch (IllegalArgumentException ex2) {
+                throw new IOException("无效的重定向地址: " + location);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.sitecloner.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * 先进先出的前沿队列存储：内存中只保留队头与队尾两个小缓冲，中间部分按段写入磁盘，
+ * 无论站点有多少 URL，堆占用都不超过约 3 个段的条目数。
+ *
+ * 结构（先进先出）：head ← 段文件 seg-N.txt（从旧到新）← tail。
+ * 新条目先进 tail，tail 满一段即整体写成新的段文件；head 取空后优先从最旧的段文件读回，
+ * 没有段文件时才直接接管 tail。每行一个条目：深度\tURL。
+ * 非线程安全，由 {@link CrawlFrontier} 加锁调用。
+ *
+ * 段文件目录每个任务一个（同一站点的多个任务共用 &lt;outputDir&gt;/.sitecloner/frontier），写第一个段文件时
+ * 对目录中的 .lock 加文件锁，任务结束时删除整个目录；创建时清理同级目录中锁已无人持有的（进程崩溃遗留的）段文件。
+ */
+class FifoFrontierQueue implements FrontierQueue {
+
+    private static final String LOCK = ".lock";
+
+    private final Path dir;
+    private final int segmentEntries;
+    private final ArrayDeque<CrawlFrontier.Entry> head = new ArrayDeque<>();
+    private final ArrayDeque<CrawlFrontier.Entry> tail = new ArrayDeque<>();
+    private final ArrayDeque<Path> segments = new ArrayDeque<>();
+    private long nextSegment;
+    private long size;
+    private boolean spillFailed;
+    // 持有期间其它任务不会清理本目录
+    private FileChannel lockChannel;
+
+    FifoFrontierQueue(Path dir, int segmentEntries) {
+        this.dir = dir;
+        this.segmentEntries = Math.max(16, segmentEntries);
+        removeStaleDirectories();
+    }
+
+    @Override
+    public void add(CrawlFrontier.Entry e) {
+        size++;
+        if (segments.isEmpty() && tail.isEmpty() && head.size() < segmentEntries) {
+            head.add(e);
+            return;
+        }
+        tail.add(e);
+        if (tail.size() >= segmentEntries && !spillFailed) spill();
+    }
+
+    @Override
+    public CrawlFrontier.Entry poll() {
+        if (head.isEmpty()) refill();
+        CrawlFrontier.Entry e = head.poll();
+        if (e != null) size--;
+        return e;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void writeTo(BufferedWriter out) throws IOException {
+        for (CrawlFrontier.Entry e : head) writeEntry(out, e);
+        for (Path file : segments) {
+            try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+        }
+        for (CrawlFrontier.Entry e : tail) writeEntry(out, e);
+    }
+
+    private static void writeEntry(BufferedWriter out, CrawlFrontier.Entry e) throws IOException {
+        out.write(e.depth + "\t" + e.uri.toString());
+        out.newLine();
+    }
+
+    @Override
+    public void clear() {
+        head.clear();
+        tail.clear();
+        segments.clear();
+        size = 0;
+        deleteSegments(dir);
+        if (lockChannel != null) {
+            try { lockChannel.close(); } catch (IOException ignore) {}
+            lockChannel = null;
+        }
+        try {
+            Files.deleteIfExists(dir.resolve(LOCK));
+            Files.deleteIfExists(dir);
+        } catch (IOException ignore) {}
+    }
+
+    private void spill() {
+        Path file = dir.resolve("seg-" + (nextSegment++) + ".txt");
+        try {
+            if (lockChannel == null) {
+                Files.createDirectories(dir);
+                FileChannel ch = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                try {
+                    ch.lock();
+                } catch (IOException | RuntimeException ex) {
+                    ch.close();
+                    throw ex;
+                }
+                lockChannel = ch;
+            }
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (CrawlFrontier.Entry e : tail) writeEntry(w, e);
+            }
+            segments.add(file);
+            tail.clear();
+        } catch (IOException ex) {
+            // 写盘失败时退化为纯内存队列，保证采集继续
+            spillFailed = true;
+            System.out.println("[FRONTIER][SPILL-FAIL] " + file + " -> " + ex + "，改为内存队列");
+            try { Files.deleteIfExists(file); } catch (IOException ignore) {}
+        }
+    }
+
+    private void refill() {
+        while (head.isEmpty() && !segments.isEmpty()) {
+            Path file = segments.poll();
+            // 每个段文件恰好写入 segmentEntries 条，读不回来的部分从计数中扣除
+            int loaded = 0;
+            try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) continue;
+                    try {
+                        head.add(new CrawlFrontier.Entry(new URI(line.substring(tab + 1)), Integer.parseInt(line.substring(0, tab))));
+                        loaded++;
+                    } catch (Exception ignore) {}
+                }
+            } catch (IOException ex) {
+                System.out.println("[FRONTIER][READ-FAIL] " + file + " -> " + ex);
+            }
+            size -= segmentEntries - loaded;
+            try { Files.deleteIfExists(file); } catch (IOException ignore) {}
+        }
+        if (head.isEmpty() && !tail.isEmpty()) {
+            head.addAll(tail);
+            tail.clear();
+        }
+    }
+
+    private static void deleteSegments(Path dir) {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*.txt")) {
+            for (Path f : files) Files.deleteIfExists(f);
+        } catch (IOException ignore) {}
+    }
+
+    // 清理同级目录中没有任务持有锁的段文件；还没有 .lock 的目录（刚创建）不动
+    private void removeStaleDirectories() {
+        Path parent = dir.getParent();
+        if (parent == null || !Files.isDirectory(parent)) return;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(parent)) {
+            for (Path d : dirs) {
+                if (d.equals(dir) || !Files.isDirectory(d)) continue;
+                try (FileChannel ch = FileChannel.open(d.resolve(LOCK), StandardOpenOption.WRITE)) {
+                    FileLock lock = ch.tryLock();
+                    // 其它进程的任务仍在使用
+                    if (lock == null) continue;
+                    try {
+                        deleteSegments(d);
+                    } finally {
+                        lock.release();
+                    }
+                } catch (NoSuchFileException | OverlappingFileLockException skip) {
+                    // 本进程内的其它任务正在使用，或目录刚创建
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(d.resolve(LOCK));
+                    Files.deleteIfExists(d);
+                    System.out.println("[FRONTIER][STALE-REMOVED] " + d);
+                } catch (IOException ignore) {}
+            }
+        } catch (IOException ignore) {}
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.sitecloner.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * 前沿队列的存储策略，由 {@link CrawlFrontier} 加锁调用，实现无需线程安全。
+ * {@link FifoFrontierQueue} 按发现顺序出队（严格 BFS）；{@link PriorityFrontierQueue} 按链接价值评分出队。
+ */
+interface FrontierQueue {
+
+    void add(CrawlFrontier.Entry e);
+
+    // 取出下一个条目，队列为空时返回 null
+    CrawlFrontier.Entry poll();
+
+    boolean isEmpty();
+
+    long size();
+
+    // 按出队顺序写出全部条目（断点保存用），每行 深度\tURL，不改变队列
+    void writeTo(BufferedWriter out) throws IOException;
+
+    // 任务结束时释放（删除磁盘上的段文件）
+    void clear();
+}
@@ -0,0 +1,55 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlRequest;
+import com.example.sitecloner.model.FingerprintSet;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 优先级前沿的链接评分，分数越高越先抓取。
+ *
+ * 默认实现 {@link #forRequest} 综合四项：深度越浅越好；目前为止被引用（入链）越多越好，按对数计以免导航链接压倒一切；
+ * 路径包含配置的模式时加上对应权重（如栏目页 /col/ 加分、文章页 /art/ 减分）；出现在站点 sitemap.xml 中的加分。
+ * 页数预算有限时，站点的主干（首页、栏目、被广泛引用的页面）先被覆盖，页脚与归档链接排在后面。
+ */
+interface FrontierScorer {
+
+    double score(URI uri, int depth, int inlinks);
+
+    // 出现在 sitemap.xml 中的页面的加分（每层深度扣 1 分，入链数按 log2(1+n) 加分）
+    double SITEMAP_BONUS = 2.0;
+
+    /**
+     * 按请求的 urlPatternWeights（逗号分隔的 路径片段=权重，如 "/col/=2,/art/=-1"）构造默认评分；
+     * sitemap 为站点 sitemap.xml 中 URL（已规范化）的指纹，未取到时为空集合。
+     */
+    static FrontierScorer forRequest(CrawlRequest request, final FingerprintSet sitemap) {
+        final List<String> fragments = new ArrayList<>();
+        final List<Double> weights = new ArrayList<>();
+        String raw = request.getUrlPatternWeights();
+        if (raw != null) {
+            for (String item : raw.split(",")) {
+                int eq = item.lastIndexOf('=');
+                if (eq <= 0) continue;
+                try {
+                    double w = Double.parseDouble(item.substring(eq + 1).trim());
+                    fragments.add(item.substring(0, eq).trim());
+                    weights.add(w);
+                } catch (NumberFormatException ignore) {}
+            }
+        }
+        return new FrontierScorer() {
+            public double score(URI uri, int depth, int inlinks) {
+                double s = -depth + Math.log(1 + inlinks) / Math.log(2);
+                String path = uri.getRawPath() == null ? "/" : uri.getRawPath();
+                for (int i = 0; i < fragments.size(); i++) {
+                    if (path.contains(fragments.get(i))) s += weights.get(i);
+                }
+                if (sitemap.contains(uri.toString())) s += SITEMAP_BONUS;
+                return s;
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.FetchProperties;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机（host:port）的熔断器，由所有采集任务共享（挂在全局的 {@link HttpFetcher} 上）。
+ *
+ * 连续 N 次连接级失败（连接被拒、超时、DNS 失败等）后熔断，期间对该主机的请求直接失败；
+ * 熔断一段时间后放行一个探测请求（半开），成功则恢复，失败则重新计时。
+ * 只要拿到了 HTTP 响应（无论状态码）即视为主机可达。
+ * 探测请求没有得出结果（任务取消、等待限流时被中断、运行时异常）时由调用方 {@link #abandonProbe} 归还探测名额，
+ * 否则该主机会一直停在半开且无人可探测的状态。
+ */
+class HostCircuitBreaker {
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final FetchProperties props;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    HostCircuitBreaker(FetchProperties props) {
+        this.props = props;
+    }
+
+    // 熔断中直接抛出 FetchRejectedException（不再重试）；返回本次请求是否为半开状态下的探测请求
+    boolean check(URI uri) throws FetchRejectedException {
+        if (props.getBreakerFailureThreshold() <= 0) return false;
+        HostState state = hosts.get(key(uri));
+        if (state == null) return false;
+        Boolean probe = state.allow();
+        if (probe == null) {
+            throw new FetchRejectedException("主机熔断中，暂不请求: " + key(uri));
+        }
+        return probe;
+    }
+
+    // 探测请求未得出成功或失败：放行下一个请求探测
+    void abandonProbe(URI uri) {
+        HostState state = hosts.get(key(uri));
+        if (state != null) state.abandon();
+    }
+
+    void onSuccess(URI uri) {
+        HostState state = hosts.get(key(uri));
+        if (state != null) state.success();
+    }
+
+    void onFailure(URI uri) {
+        if (props.getBreakerFailureThreshold() <= 0) return;
+        hosts.computeIfAbsent(key(uri), HostState::new).failure();
+    }
+
+    private static String key(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if (port < 0) port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return host + ":" + port;
+    }
+
+    private final class HostState {
+        private final String host;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAtNanos;
+        private boolean probing;
+
+        HostState(String host) {
+            this.host = host;
+        }
+
+        // 放行返回是否为探测请求，拒绝返回 null
+        synchronized Boolean allow() {
+            if (state == State.CLOSED) return Boolean.FALSE;
+            long openNanos = TimeUnit.SECONDS.toNanos(Math.max(1, props.getBreakerOpenSeconds()));
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                System.out.println("[BREAKER][PROBE] host=" + host);
+                return Boolean.TRUE;
+            }
+            return null;
+        }
+
+        synchronized void abandon() {
+            if (state == State.HALF_OPEN && probing) {
+                probing = false;
+                System.out.println("[BREAKER][PROBE-ABANDONED] host=" + host);
+            }
+        }
+
+        synchronized void success() {
+            if (state != State.CLOSED) {
+                System.out.println("[BREAKER][CLOSE] host=" + host);
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            probing = false;
+        }
+
+        synchronized void failure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= props.getBreakerFailureThreshold())) {
+                state = State.OPEN;
+                openedAtNanos = System.nanoTime();
+                probing = false;
+                System.out.println("[BREAKER][OPEN] host=" + host + ", failures=" + consecutiveFailures
+                        + ", openSeconds=" + props.getBreakerOpenSeconds());
+            }
+        }
+    }
+}
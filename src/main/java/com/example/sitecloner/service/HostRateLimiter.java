@@ -0,0 +1,248 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.FetchProperties;
+
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按主机的自适应限流，由所有采集任务共享（挂在全局的 {@link HttpFetcher} 上）。
+ *
+ * 每个主机同时限制并发请求数与每秒请求数，采用 AIMD：
+ * 响应正常且延迟平稳时并发上限缓慢加一、速率逐步回升；遇到 429/503、连接失败或延迟明显升高时两者减半。
+ * 响应带 Retry-After 时，该主机在指定时间内不再发出新请求。
+ * 另有全局信号量限制所有主机合计的在途请求数（maxTotalConnections）。
+ * 等待使用 Lock/Condition 而不是对象监视器，虚拟线程等待名额时不会占住载体线程。
+ */
+class HostRateLimiter {
+
+    private static final double MIN_RATE = 0.5;
+    private static final double LATENCY_ALPHA = 0.2;
+    // 两次减半之间的最短间隔，避免同一批在途请求的失败把上限连续打到底
+    private static final long BACKOFF_QUIET_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long DEFAULT_THROTTLE_BLOCK_MILLIS = 1000;
+
+    private final FetchProperties props;
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    // 全局在途请求数，不限制时为 null
+    private final Semaphore total;
+
+    HostRateLimiter(FetchProperties props) {
+        this.props = props;
+        this.total = props.getMaxTotalConnections() > 0 ? new Semaphore(props.getMaxTotalConnections(), true) : null;
+    }
+
+    /**
+     * 一次请求占用的名额。响应头到达时调用 {@link #complete}，连接释放时调用 {@link #release}。
+     */
+    final class Permit {
+        private final HostState state;
+        private final long startNanos;
+        private boolean completed;
+        private boolean released;
+
+        private Permit(HostState state) {
+            this.state = state;
+            this.startNanos = System.nanoTime();
+        }
+
+        // 记录响应状态与首字节延迟，驱动上限调整；status < 0 表示连接失败
+        void complete(int status, String retryAfter) {
+            state.lock.lock();
+            try {
+                if (completed) return;
+                completed = true;
+            } finally {
+                state.lock.unlock();
+            }
+            state.onResponse(status, (System.nanoTime() - startNanos) / 1_000_000L, retryAfter);
+        }
+
+        void release() {
+            state.lock.lock();
+            try {
+                if (released) return;
+                released = true;
+                state.inFlight--;
+                state.changed.signalAll();
+            } finally {
+                state.lock.unlock();
+            }
+            if (total != null) total.release();
+        }
+    }
+
+    // 等待该主机与全局都有空余名额；被中断时抛出 InterruptedIOException，交由调用方按取消处理
+    Permit acquire(String host) throws InterruptedIOException {
+        HostState state = hosts.computeIfAbsent(host == null ? "" : host.toLowerCase(Locale.ROOT), HostState::new);
+        try {
+            state.enter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待主机限流名额时被中断: " + host);
+        }
+        if (total != null) {
+            try {
+                total.acquire();
+            } catch (InterruptedException e) {
+                state.leave();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待全局连接名额时被中断: " + host);
+            }
+        }
+        return new Permit(state);
+    }
+
+    private final class HostState {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final String host;
+        private double limit;
+        private double rate;
+        private int inFlight;
+        private long nextSlotNanos;
+        private long blockedUntilNanos;
+        private long lastBackoffNanos;
+        private int consecutiveThrottles;
+        private double latencyEwma = -1;
+        private double latencyBaseline = -1;
+
+        HostState(String host) {
+            this.host = host;
+            this.limit = Math.max(1, Math.min(props.getHostInitialConcurrency(), maxConcurrency()));
+            this.rate = maxRate();
+            long now = System.nanoTime();
+            this.nextSlotNanos = now;
+            this.blockedUntilNanos = now;
+            this.lastBackoffNanos = now - BACKOFF_QUIET_NANOS;
+        }
+
+        void enter() throws InterruptedException {
+            lock.lock();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long waitNanos = 0;
+                    if (now < blockedUntilNanos) {
+                        waitNanos = blockedUntilNanos - now;
+                    } else if (inFlight >= (int) limit) {
+                        waitNanos = TimeUnit.SECONDS.toNanos(1);
+                    } else if (rate > 0 && now < nextSlotNanos) {
+                        waitNanos = nextSlotNanos - now;
+                    }
+                    if (waitNanos <= 0) break;
+                    changed.awaitNanos(waitNanos);
+                }
+                inFlight++;
+                if (rate > 0) {
+                    long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+                    nextSlotNanos = Math.max(nextSlotNanos, System.nanoTime()) + interval;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 取得主机名额后未能发出请求（等待全局名额时被中断），归还名额
+        void leave() {
+            lock.lock();
+            try {
+                inFlight--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onResponse(int status, long latencyMillis, String retryAfter) {
+            lock.lock();
+            try {
+                respond(status, latencyMillis, retryAfter);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void respond(int status, long latencyMillis, String retryAfter) {
+            long now = System.nanoTime();
+            if (status == 429 || status == 503) {
+                consecutiveThrottles++;
+                long blockMillis = parseRetryAfter(retryAfter);
+                if (blockMillis < 0) {
+                    // 未给出 Retry-After：按连续被限流次数指数退避
+                    blockMillis = DEFAULT_THROTTLE_BLOCK_MILLIS << Math.min(5, consecutiveThrottles - 1);
+                }
+                blockMillis = Math.min(blockMillis, TimeUnit.SECONDS.toMillis(Math.max(1, props.getMaxRetryAfterSeconds())));
+                blockedUntilNanos = Math.max(blockedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(blockMillis));
+                backoff(now, "HTTP " + status + ", block=" + blockMillis + "ms");
+                return;
+            }
+            if (status < 0) {
+                backoff(now, "connect-failure");
+                return;
+            }
+            consecutiveThrottles = 0;
+            latencyEwma = latencyEwma < 0 ? latencyMillis : latencyEwma + LATENCY_ALPHA * (latencyMillis - latencyEwma);
+            if (latencyBaseline < 0 || latencyEwma < latencyBaseline) {
+                latencyBaseline = latencyEwma;
+            } else {
+                // 基线缓慢上浮，适应主机整体变慢而不是一直判定为拥塞
+                latencyBaseline += 0.01 * (latencyEwma - latencyBaseline);
+            }
+            double factor = props.getLatencyBackoffFactor();
+            if (factor > 1 && latencyEwma > latencyBaseline * factor && latencyEwma > props.getLatencyFloorMillis()) {
+                backoff(now, "latency=" + (long) latencyEwma + "ms, baseline=" + (long) latencyBaseline + "ms");
+                return;
+            }
+            // 加性增：每个“窗口”（约 limit 个成功响应）上限加一
+            limit = Math.min(maxConcurrency(), limit + 1.0 / limit);
+            double max = maxRate();
+            if (max > 0) rate = Math.min(max, rate + max / 20.0);
+            changed.signalAll();
+        }
+
+        private void backoff(long now, String reason) {
+            if (now - lastBackoffNanos < BACKOFF_QUIET_NANOS) return;
+            lastBackoffNanos = now;
+            limit = Math.max(1, limit / 2);
+            if (maxRate() > 0) rate = Math.max(MIN_RATE, rate / 2);
+            System.out.println("[LIMIT][BACKOFF] host=" + host + ", limit=" + String.format(Locale.ROOT, "%.1f", limit)
+                    + ", rps=" + (maxRate() > 0 ? String.format(Locale.ROOT, "%.1f", rate) : "unlimited") + ", reason=" + reason);
+        }
+
+        private int maxConcurrency() {
+            return Math.max(1, props.getHostMaxConcurrency());
+        }
+
+        private double maxRate() {
+            return Math.max(0, props.getHostMaxRequestsPerSecond());
+        }
+    }
+
+    // Retry-After 可以是秒数或 HTTP 日期；无法解析时返回 -1
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) return -1;
+        String v = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(v)) * 1000L;
+        } catch (NumberFormatException ignore) {}
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(v);
+            return Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
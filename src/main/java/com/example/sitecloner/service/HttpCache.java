@@ -0,0 +1,447 @@
+package com.example.sitecloner.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 所有采集任务共享的磁盘 HTTP 缓存（挂在全局的 {@link HttpFetcher} 上），位于 &lt;outputBaseDir&gt;/.http-cache。
+ *
+ * 以规范化 URL 为键，只缓存 GET 的 200 响应（解压后的响应体 + 少量响应头）。
+ * 新鲜度按 Cache-Control max-age / Expires 计算，上限为配置的最长缓存时间；没有声明时，
+ * 资源按 Last-Modified 的 10% 启发式估算，页面则每次都用 ETag/Last-Modified 重新验证。
+ * 新鲜的条目直接命中，不占主机限流名额；过期的条目发条件请求，304 时沿用缓存内容。
+ * 内存中维护按访问顺序的索引，总大小超过上限时淘汰最久未用的条目。
+ * 带 Set-Cookie、Cache-Control: no-store / private 或按请求头区分内容（Vary）的响应不缓存，
+ * 请求带了 Cookie 或 Authorization 的响应（可能是某个会话专属的内容）也不缓存。
+ */
+class HttpCache {
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?i)(?:^|[,\\s])(?:s-)?max-age\\s*=\\s*\"?(\\d+)");
+    private static final String[] HTTP_DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", "EEEE, dd-MMM-yy HH:mm:ss zzz", "EEE MMM d HH:mm:ss yyyy"
+    };
+
+    // 缓存条目的元数据；响应体在 bodyFile 中
+    static final class Entry {
+        final String key;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+        final long size;
+        volatile long freshUntil;
+
+        Entry(String key, String contentType, String etag, String lastModified, long size, long freshUntil) {
+            this.key = key;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.freshUntil = freshUntil;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    // 访问顺序的 LRU 索引，由 this 加锁
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    HttpCache(Path dir, long maxBytes, long maxAgeSeconds) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(Math.max(0, maxAgeSeconds));
+        loadIndex();
+    }
+
+    static String key(URI url) {
+        return UrlCanonicalizer.DEFAULT.key(url);
+    }
+
+    // 查找条目（新鲜或过期），同时更新 LRU 顺序
+    synchronized Entry lookup(URI url) {
+        return index.get(key(url));
+    }
+
+    // 打开缓存的响应体；文件已被淘汰时返回 null
+    InputStream open(Entry e) {
+        try {
+            return Files.newInputStream(bodyFile(e.key));
+        } catch (IOException ex) {
+            remove(e.key);
+            return null;
+        }
+    }
+
+    // 由缓存应答；revalidatedHit 表示经源站 304 确认，servedBytes 为交给调用方的响应体大小
+    void recordHit(boolean revalidatedHit, long servedBytes) {
+        (revalidatedHit ? revalidated : hits).incrementAndGet();
+        bytesServed.addAndGet(servedBytes);
+    }
+
+    // 请求最终走了网络
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    // 过期条目的条件请求头
+    static Map<String, String> validators(Entry e, Map<String, String> base) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, String> h : base.entrySet()) {
+            String name = h.getKey();
+            if (name.equalsIgnoreCase("If-None-Match") || name.equalsIgnoreCase("If-Modified-Since")) continue;
+            headers.put(name, h.getValue());
+        }
+        if (e.etag != null) headers.put("If-None-Match", e.etag);
+        if (e.lastModified != null) headers.put("If-Modified-Since", e.lastModified);
+        return headers;
+    }
+
+    // 源站返回 304：按新的响应头刷新新鲜度
+    void refresh(Entry e, HttpURLConnection conn, boolean page) {
+        e.freshUntil = freshUntil(conn, e.lastModified, page);
+        writeMeta(e);
+    }
+
+    /**
+     * 200 响应可缓存时返回写入器，响应体边读边写入临时文件，读到末尾才提交；不可缓存时返回 null。
+     * credentialed 表示请求带了 Cookie 或 Authorization。
+     */
+    Writer begin(URI url, HttpURLConnection conn, boolean page, boolean credentialed) {
+        if (credentialed || conn.getHeaderField("Set-Cookie") != null) return null;
+        String cc = lower(conn.getHeaderField("Cache-Control"));
+        if (cc.contains("no-store") || cc.contains("private")) return null;
+        String vary = lower(conn.getHeaderField("Vary")).replace("accept-encoding", "").replace("user-agent", "").replace(",", "").trim();
+        if (!vary.isEmpty()) return null;
+        String etag = conn.getHeaderField("ETag");
+        String lastModified = conn.getHeaderField("Last-Modified");
+        long fresh = freshUntil(conn, lastModified, page);
+        // 既不新鲜也无法重新验证的条目没有用处
+        if (fresh <= System.currentTimeMillis() && etag == null && lastModified == null) return null;
+        long declared = conn.getContentLengthLong();
+        if (declared > maxEntryBytes()) return null;
+        Entry e = new Entry(key(url), conn.getContentType(), etag, lastModified, 0, fresh);
+        try {
+            Files.createDirectories(bodyFile(e.key).getParent());
+            Path tmp = bodyFile(e.key).resolveSibling(hash(e.key) + "." + Long.toHexString(System.nanoTime()) + ".part");
+            return new Writer(e, tmp, Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // 单个条目最多占缓存的 1/4，避免一个大文件挤掉所有条目
+    private long maxEntryBytes() {
+        return Math.max(1, maxBytes / 4);
+    }
+
+    private long freshUntil(HttpURLConnection conn, String lastModified, boolean page) {
+        long now = System.currentTimeMillis();
+        String cc = lower(conn.getHeaderField("Cache-Control"));
+        if (cc.contains("no-cache")) return now;
+        long lifetime = -1;
+        Matcher m = MAX_AGE.matcher(cc);
+        if (m.find()) {
+            try {
+                lifetime = TimeUnit.SECONDS.toMillis(Long.parseLong(m.group(1)));
+            } catch (NumberFormatException ignore) {}
+        }
+        if (lifetime < 0) {
+            long expires = parseDate(conn.getHeaderField("Expires"));
+            if (expires > 0) {
+                long date = parseDate(conn.getHeaderField("Date"));
+                lifetime = Math.max(0, expires - (date > 0 ? date : now));
+            } else if (conn.getHeaderField("Expires") != null) {
+                lifetime = 0;  // 无效的 Expires 视为已过期
+            }
+        }
+        if (lifetime < 0 && !page) {
+            long modified = parseDate(lastModified);
+            if (modified > 0 && modified < now) lifetime = (now - modified) / 10;
+        }
+        if (lifetime < 0) lifetime = 0;
+        return now + Math.min(lifetime, maxAgeMillis);
+    }
+
+    /**
+     * 边读边写入缓存的响应体。只有读到流末尾才提交；中途关闭或中止则丢弃临时文件。
+     */
+    final class Writer {
+        private final Entry meta;
+        private final Path tmp;
+        private OutputStream out;
+        private long written;
+
+        Writer(Entry meta, Path tmp, OutputStream out) {
+            this.meta = meta;
+            this.tmp = tmp;
+            this.out = out;
+        }
+
+        InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b == -1) commit();
+                    else write(new byte[]{(byte) b}, 0, 1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int r = super.read(b, off, len);
+                    if (r == -1) commit();
+                    else if (r > 0) write(b, off, r);
+                    return r;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        discard();
+                    }
+                }
+            };
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (out == null) return;
+            written += len;
+            try {
+                if (written > maxEntryBytes()) throw new IOException("超过单条缓存上限");
+                out.write(b, off, len);
+            } catch (IOException ex) {
+                discard();
+            }
+        }
+
+        private void commit() {
+            if (out == null) return;
+            try {
+                out.close();
+                out = null;
+                Entry e = new Entry(meta.key, meta.contentType, meta.etag, meta.lastModified, written, meta.freshUntil);
+                Path body = bodyFile(e.key);
+                try {
+                    Files.move(tmp, body, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, body, StandardCopyOption.REPLACE_EXISTING);
+                }
+                writeMeta(e);
+                put(e);
+                stores.incrementAndGet();
+            } catch (IOException ex) {
+                discard();
+            }
+        }
+
+        void discard() {
+            if (out == null) return;
+            try { out.close(); } catch (IOException ignore) {}
+            out = null;
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+        }
+    }
+
+    private void put(Entry e) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry old = index.put(e.key, e);
+            if (old != null) totalBytes -= old.size;
+            totalBytes += e.size;
+            Iterator<Entry> it = index.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next();
+                if (eldest == e) continue;
+                it.remove();
+                totalBytes -= eldest.size;
+                evicted.add(eldest);
+            }
+        }
+        for (Entry old : evicted) {
+            deleteFiles(old.key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Entry old = index.remove(key);
+            if (old != null) totalBytes -= old.size;
+        }
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        try {
+            Files.deleteIfExists(bodyFile(key));
+            Files.deleteIfExists(metaFile(key));
+        } catch (IOException ignore) {}
+    }
+
+    private void writeMeta(Entry e) {
+        Properties p = new Properties();
+        p.setProperty("key", e.key);
+        if (e.contentType != null) p.setProperty("contentType", e.contentType);
+        if (e.etag != null) p.setProperty("etag", e.etag);
+        if (e.lastModified != null) p.setProperty("lastModified", e.lastModified);
+        p.setProperty("size", String.valueOf(e.size));
+        p.setProperty("freshUntil", String.valueOf(e.freshUntil));
+        Path file = metaFile(e.key);
+        Path tmp = file.resolveSibling(file.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                p.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+        }
+    }
+
+    // 启动时从元数据文件重建索引，按文件修改时间近似恢复 LRU 顺序
+    private void loadIndex() {
+        if (!Files.isDirectory(dir)) return;
+        final Map<Entry, Long> touched = new LinkedHashMap<>();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(dir)) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) continue;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                    for (Path f : files) {
+                        String name = f.getFileName().toString();
+                        if (name.endsWith(".part") || name.endsWith(".tmp")) {
+                            Files.deleteIfExists(f);
+                            continue;
+                        }
+                        if (!name.endsWith(".meta")) continue;
+                        Entry e = readMeta(f);
+                        if (e == null || !Files.exists(bodyFile(e.key))) {
+                            Files.deleteIfExists(f);
+                            continue;
+                        }
+                        touched.put(e, Files.getLastModifiedTime(f).toMillis());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("[HTTP-CACHE][LOAD-FAIL] " + dir + " -> " + ex);
+        }
+        List<Entry> ordered = new ArrayList<>(touched.keySet());
+        Collections.sort(ordered, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return Long.compare(touched.get(a), touched.get(b));
+            }
+        });
+        for (Entry e : ordered) put(e);
+        System.out.println("[HTTP-CACHE][LOAD] entries=" + index.size() + ", bytes=" + totalBytes + ", dir=" + dir);
+    }
+
+    private static Entry readMeta(Path file) {
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            p.load(in);
+            return new Entry(p.getProperty("key"), p.getProperty("contentType"), p.getProperty("etag"),
+                    p.getProperty("lastModified"), Long.parseLong(p.getProperty("size", "0")),
+                    Long.parseLong(p.getProperty("freshUntil", "0")));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Path bodyFile(String key) {
+        String h = hash(key);
+        return dir.resolve(h.substring(0, 2)).resolve(h + ".body");
+    }
+
+    private Path metaFile(String key) {
+        String h = hash(key);
+        return dir.resolve(h.substring(0, 2)).resolve(h + ".meta");
+    }
+
+    private static String hash(String key) {
+        return ValidatorStore.sha256Hex(key.getBytes(StandardCharsets.UTF_8)).substring(0, 40);
+    }
+
+    private static String lower(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) return -1;
+        for (String fmt : HTTP_DATE_FORMATS) {
+            SimpleDateFormat f = new SimpleDateFormat(fmt, Locale.US);
+            f.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date d = f.parse(value.trim());
+                return d.getTime();
+            } catch (Exception ignore) {}
+        }
+        return -1;
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long h = hits.get();
+        long r = revalidated.get();
+        long miss = misses.get();
+        long lookups = h + r + miss;
+        synchronized (this) {
+            m.put("entries", index.size());
+            m.put("bytes", totalBytes);
+        }
+        m.put("maxBytes", maxBytes);
+        m.put("hits", h);
+        m.put("revalidated", r);
+        m.put("misses", miss);
+        m.put("hitRate", lookups == 0 ? 0.0 : (double) (h + r) / lookups);
+        m.put("stores", stores.get());
+        m.put("evictions", evictions.get());
+        m.put("bytesServed", bytesServed.get());
+        return m;
+    }
+}
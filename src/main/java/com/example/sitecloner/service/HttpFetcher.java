@@ -0,0 +1,77 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.FetchProperties;
+import com.example.sitecloner.config.StorageProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 全局共享的 HTTP 抓取组件，统一 User-Agent、超时与请求头设置。
+ *
+ * 连接复用依赖 JDK HttpURLConnection：按 host:port 维护 keep-alive 连接池，
+ * HTTPS 连接共用默认 SSLContext 的客户端会话缓存，握手后的 TLS 会话会被复用。
+ * 每个采集任务通过 {@link #openSession()} 获得独立的 Cookie 存储；
+ * 按主机的限流器 {@link HostRateLimiter}、熔断器 {@link HostCircuitBreaker} 与磁盘缓存 {@link HttpCache} 由所有任务共享。
+ * 采集线程统一由 {@link CrawlThreads} 创建（平台线程或虚拟线程）。
+ */
+@Component
+public class HttpFetcher {
+
+    private final FetchProperties properties;
+    private final FetchSession defaultSession;
+    private final HostRateLimiter limiter;
+    private final HostCircuitBreaker breaker;
+    // 未开启时为 null
+    private final HttpCache cache;
+    private final CrawlThreads threads;
+
+    public HttpFetcher(FetchProperties properties, StorageProperties storage) {
+        this.properties = properties;
+        this.threads = new CrawlThreads(properties.isVirtualThreads());
+        this.limiter = new HostRateLimiter(properties);
+        this.breaker = new HostCircuitBreaker(properties);
+        this.cache = storage.getHttpCacheMaxBytes() > 0
+                ? new HttpCache(Paths.get(CrawlService.sanitizePathConfig(storage.getOutputBaseDir())).resolve(".http-cache"),
+                        storage.getHttpCacheMaxBytes(), storage.getHttpCacheMaxAgeSeconds())
+                : null;
+        this.defaultSession = new FetchSession(this, false);
+    }
+
+    // 为一个采集任务打开新的会话（独立 Cookie 与失效缓存）
+    FetchSession openSession() {
+        return new FetchSession(this, true);
+    }
+
+    // 不属于任何采集任务的调用（如调试接口）共用的会话
+    FetchSession defaultSession() {
+        return defaultSession;
+    }
+
+    HostCircuitBreaker breaker() {
+        return breaker;
+    }
+
+    HttpCache cache() {
+        return cache;
+    }
+
+    // 共享缓存的命中率等统计
+    public Map<String, Object> cacheStats() {
+        return cache == null ? Collections.<String, Object>singletonMap("enabled", false) : cache.stats();
+    }
+
+    CrawlThreads threads() {
+        return threads;
+    }
+
+    HostRateLimiter limiter() {
+        return limiter;
+    }
+
+    FetchProperties properties() {
+        return properties;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.FingerprintSet;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * 单个任务内的近似重复页面检测：对页面正文计算 64 位 SimHash，与已保存页面的汉明距离不超过阈值即视为近似重复。
+ *
+ * 日历、排序、打印版、带会话 ID 的变体页面内容几乎相同，判为重复后不再走重写与保存流程，也不占 maxPages。
+ * 同时按 URL 模板（数字路径段归一为 {n}，查询只保留参数名）统计：某模板的页面多数是重复时，
+ * 后续入队的该模板链接直接剪掉，把页数预算留给不同的内容。
+ *
+ * 指纹按 4 段 16 位分桶索引：距离不超过 3 的两个指纹至少有一段完全相同，只需比较同桶的候选。
+ */
+class NearDuplicateDetector {
+
+    private static final int SHINGLE = 4;
+    // 正文太短（如纯图片页）时不做判断，避免把所有空页面当成重复
+    private static final int MIN_TEXT_CHARS = 80;
+    // 模板至少出现这么多页后才判断其重复率
+    private static final int PATTERN_MIN_PAGES = 5;
+    private static final double PATTERN_DUP_RATIO = 0.6;
+    private static final Pattern NUMERIC_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{16,}|\\d+[-_]\\d+(?:[-_]\\d+)*");
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    private static final Pattern CHROME_MARKER = Pattern.compile("\\b(?:nav|menu|header|footer|breadcrumb|sidebar)");
+
+    private final int maxDistance;
+    private final List<Map<Integer, List<Long>>> bands = new ArrayList<>();
+    private final Map<Long, String> owners = new HashMap<>();
+    private final Map<String, int[]> patterns = new HashMap<>();
+
+    NearDuplicateDetector(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 3));
+        for (int i = 0; i < 4; i++) bands.add(new HashMap<Integer, List<Long>>());
+    }
+
+    /**
+     * 检查页面是否与已保存页面近似重复；不重复时登记其指纹。返回重复的原页面 URL，不重复或无法判断时返回 null。
+     */
+    synchronized String check(URI uri, Document doc) {
+        String text = mainText(doc);
+        String pattern = pattern(uri);
+        int[] stats = patterns.get(pattern);
+        if (stats == null) patterns.put(pattern, stats = new int[2]);
+        stats[0]++;
+        if (text.length() < MIN_TEXT_CHARS) return null;
+        long hash = simHash(text);
+        String original = findNear(hash);
+        if (original != null) {
+            stats[1]++;
+            return original;
+        }
+        index(hash, uri.toString());
+        return null;
+    }
+
+    // 该链接所属模板的页面已多数是近似重复
+    synchronized boolean isDuplicateProne(URI uri) {
+        int[] stats = patterns.get(pattern(uri));
+        return stats != null && stats[0] >= PATTERN_MIN_PAGES && stats[1] >= stats[0] * PATTERN_DUP_RATIO;
+    }
+
+    private String findNear(long hash) {
+        for (int b = 0; b < 4; b++) {
+            List<Long> candidates = bands.get(b).get(band(hash, b));
+            if (candidates == null) continue;
+            for (long c : candidates) {
+                if (Long.bitCount(c ^ hash) <= maxDistance) return owners.get(c);
+            }
+        }
+        return null;
+    }
+
+    private void index(long hash, String url) {
+        if (owners.containsKey(hash)) return;
+        owners.put(hash, url);
+        for (int b = 0; b < 4; b++) {
+            Map<Integer, List<Long>> m = bands.get(b);
+            int key = band(hash, b);
+            List<Long> list = m.get(key);
+            if (list == null) m.put(key, list = new ArrayList<>(2));
+            list.add(hash);
+        }
+    }
+
+    private static int band(long hash, int b) {
+        return (int) ((hash >>> (b * 16)) & 0xFFFF);
+    }
+
+    // 正文：优先 main/article，否则 body，并跳过导航、页眉页脚等各页共有的部分；script/style 不是文本节点，不计入
+    private static String mainText(Document doc) {
+        Element root = doc.selectFirst("main, article, [role=main]");
+        if (root == null) root = doc.body();
+        if (root == null) return "";
+        StringBuilder sb = new StringBuilder();
+        appendText(root, sb);
+        // 去掉空白后再切片，同时适用于中文（无空格）与西文；数字（日期、计数）统一处理，免得只差日期的页面被算作不同
+        return DIGITS.matcher(sb).replaceAll("0").replaceAll("\\s+", "");
+    }
+
+    private static void appendText(Element el, StringBuilder sb) {
+        for (Node child : el.childNodes()) {
+            if (child instanceof TextNode) {
+                sb.append(((TextNode) child).text());
+            } else if (child instanceof Element) {
+                Element e = (Element) child;
+                if (isChrome(e)) continue;
+                appendText(e, sb);
+            }
+        }
+    }
+
+    private static boolean isChrome(Element e) {
+        String tag = e.tagName();
+        if (tag.equals("nav") || tag.equals("header") || tag.equals("footer") || tag.equals("aside")) return true;
+        String marker = (e.id() + " " + e.className()).toLowerCase(Locale.ROOT);
+        return CHROME_MARKER.matcher(marker).find();
+    }
+
+    // 按 4 字符滑窗切片，各片按出现次数加权累加到 64 个位上
+    static long simHash(String text) {
+        int[] v = new int[64];
+        for (int i = 0; i + SHINGLE <= text.length(); i++) {
+            long h = FingerprintSet.fingerprint(text.substring(i, i + SHINGLE));
+            for (int bit = 0; bit < 64; bit++) {
+                v[bit] += ((h >>> bit) & 1L) != 0 ? 1 : -1;
+            }
+        }
+        long out = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (v[bit] > 0) out |= 1L << bit;
+        }
+        return out;
+    }
+
+    // URL 模板：/cal/2024/05/?view=print&sid=abc → host/cal/{n}/{n}/?sid&view
+    static String pattern(URI uri) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(uri.getHost());
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        for (String seg : path.split("/", -1)) {
+            if (seg.isEmpty()) continue;
+            sb.append('/');
+            int dot = seg.lastIndexOf('.');
+            String name = dot > 0 ? seg.substring(0, dot) : seg;
+            String ext = dot > 0 ? seg.substring(dot) : "";
+            sb.append(NUMERIC_SEGMENT.matcher(name).matches() ? "{n}" : DIGITS.matcher(name).replaceAll("{n}")).append(ext);
+        }
+        if (path.endsWith("/")) sb.append('/');
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            TreeSet<String> names = new TreeSet<>();
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                names.add(eq >= 0 ? pair.substring(0, eq) : pair);
+            }
+            sb.append('?').append(String.join("&", names));
+        }
+        return sb.toString();
+    }
+}
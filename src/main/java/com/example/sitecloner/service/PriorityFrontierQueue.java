@@ -0,0 +1,129 @@
+package com.example.sitecloner.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 按 {@link FrontierScorer} 评分出队的前沿队列（best-first）：分数高的先出，同分按发现顺序。
+ *
+ * 同一 URL 在出队前被再次发现时不新增条目，而是累加入链数、重新评分并调整位置，深度取较浅的一次。
+ * 内存中最多保留 memoryEntries 个条目；超出时把分数最低的移入磁盘上的 {@link FifoFrontierQueue}，
+ * 内存取空后再从中读回一批重新评分。落盘的条目不再累计入链（再次发现时会在内存中另建条目，出队时由已访问集合去重）。
+ */
+class PriorityFrontierQueue implements FrontierQueue {
+
+    private static final class Node {
+        final CrawlFrontier.Entry entry;
+        final String key;
+        final long seq;
+        int inlinks = 1;
+        double score;
+
+        Node(CrawlFrontier.Entry entry, long seq) {
+            this.entry = entry;
+            this.key = entry.uri.toString();
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Node> ORDER = new Comparator<Node>() {
+        public int compare(Node a, Node b) {
+            int c = Double.compare(b.score, a.score);
+            return c != 0 ? c : Long.compare(a.seq, b.seq);
+        }
+    };
+
+    private final FrontierScorer scorer;
+    private final int memoryEntries;
+    private final TreeSet<Node> ranked = new TreeSet<>(ORDER);
+    private final Map<String, Node> byUrl = new HashMap<>();
+    // 分数最低的溢出部分
+    private final FifoFrontierQueue overflow;
+    private long seq;
+
+    PriorityFrontierQueue(Path dir, int memoryEntries, FrontierScorer scorer) {
+        this.scorer = scorer;
+        this.memoryEntries = Math.max(16, memoryEntries);
+        this.overflow = new FifoFrontierQueue(dir, this.memoryEntries);
+    }
+
+    @Override
+    public void add(CrawlFrontier.Entry e) {
+        Node n = byUrl.get(e.uri.toString());
+        if (n != null) {
+            ranked.remove(n);
+            n.inlinks++;
+            if (e.depth < n.entry.depth) {
+                Node shallower = new Node(e, n.seq);
+                shallower.inlinks = n.inlinks;
+                n = shallower;
+                byUrl.put(n.key, n);
+            }
+            rank(n);
+            return;
+        }
+        n = new Node(e, seq++);
+        byUrl.put(n.key, n);
+        rank(n);
+        if (ranked.size() > memoryEntries) {
+            Node lowest = ranked.pollLast();
+            byUrl.remove(lowest.key);
+            overflow.add(lowest.entry);
+        }
+    }
+
+    private void rank(Node n) {
+        n.score = scorer.score(n.entry.uri, n.entry.depth, n.inlinks);
+        ranked.add(n);
+    }
+
+    @Override
+    public CrawlFrontier.Entry poll() {
+        if (ranked.isEmpty()) refill();
+        Node n = ranked.pollFirst();
+        if (n == null) return null;
+        byUrl.remove(n.key);
+        return n.entry;
+    }
+
+    // 从溢出部分读回半个内存容量的条目重新评分，保留空间给新发现的链接
+    private void refill() {
+        int batch = memoryEntries / 2;
+        for (int i = 0; i < batch; i++) {
+            CrawlFrontier.Entry e = overflow.poll();
+            if (e == null) break;
+            add(e);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ranked.isEmpty() && overflow.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return ranked.size() + overflow.size();
+    }
+
+    @Override
+    public void writeTo(BufferedWriter out) throws IOException {
+        for (Node n : ranked) {
+            out.write(n.entry.depth + "\t" + n.key);
+            out.newLine();
+        }
+        overflow.writeTo(out);
+    }
+
+    @Override
+    public void clear() {
+        ranked.clear();
+        byUrl.clear();
+        overflow.clear();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.sitecloner.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 读取源站的 sitemap.xml，把其中列出的页面登记到 {@link CrawlContext#sitemapUrls}，供优先级前沿加分。
+ * 只作为评分信号，不把 sitemap 中的 URL 直接入队，采集范围仍由链接发现决定。
+ *
+ * 入口为 robots.txt 中的 Sitemap: 行，没有时取站点根的 /sitemap.xml；支持一层 sitemapindex。
+ * 读取失败不影响采集。
+ */
+class SitemapReader {
+
+    private static final int MAX_SITEMAPS = 20;
+    private static final int MAX_URLS = 50000;
+    private static final long MAX_BYTES = 10L * 1024 * 1024;
+
+    private SitemapReader() {}
+
+    static void load(CrawlContext ctx) {
+        URI root = ctx.startUri.resolve("/");
+        ArrayDeque<URI> pending = new ArrayDeque<>(fromRobots(ctx, root.resolve("/robots.txt")));
+        if (pending.isEmpty()) pending.add(root.resolve("/sitemap.xml"));
+        Set<String> fetched = new LinkedHashSet<>();
+        int urls = 0;
+        while (!pending.isEmpty() && fetched.size() < MAX_SITEMAPS && urls < MAX_URLS && !ctx.isCancelled()) {
+            URI sitemap = pending.poll();
+            if (!fetched.add(sitemap.toString())) continue;
+            byte[] body = fetch(ctx, sitemap);
+            if (body == null) continue;
+            Document xml = Jsoup.parse(new String(body, StandardCharsets.UTF_8), sitemap.toString(), Parser.xmlParser());
+            for (Element loc : xml.select("sitemap > loc")) {
+                URI child = toUri(loc.text());
+                if (child != null) pending.add(child);
+            }
+            for (Element loc : xml.select("url > loc")) {
+                URI page = ctx.canonicalizer.canonicalize(toUri(loc.text()));
+                if (page == null) continue;
+                if (ctx.sitemapUrls.add(page.toString()) && ++urls >= MAX_URLS) break;
+            }
+        }
+        System.out.println("[FRONTIER][SITEMAP] sitemaps=" + fetched.size() + ", urls=" + ctx.sitemapUrls.size());
+    }
+
+    private static Set<URI> fromRobots(CrawlContext ctx, URI robots) {
+        Set<URI> out = new LinkedHashSet<>();
+        byte[] body = fetch(ctx, robots);
+        if (body == null) return out;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (!line.toLowerCase(Locale.ROOT).startsWith("sitemap:")) continue;
+                URI u = toUri(line.substring("sitemap:".length()).trim());
+                if (u != null) out.add(u);
+            }
+        } catch (Exception ignore) {}
+        return out;
+    }
+
+    private static byte[] fetch(CrawlContext ctx, URI uri) {
+        // 压缩的 .xml.gz 暂不处理
+        if (uri.getPath() != null && uri.getPath().endsWith(".gz")) return null;
+        try {
+            FetchResponse res = ctx.http.get(uri, null, false);
+            try {
+                if (res.status() != 200) return null;
+                return res.bodyAsBytes(MAX_BYTES);
+            } finally {
+                res.close();
+            }
+        } catch (Exception e) {
+            System.out.println("[FRONTIER][SITEMAP-FAIL] " + uri + " -> " + e);
+            return null;
+        }
+    }
+
+    private static URI toUri(String s) {
+        try {
+            URI u = new URI(s.trim());
+            return u.getScheme() == null ? null : u;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
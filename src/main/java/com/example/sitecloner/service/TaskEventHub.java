@@ -0,0 +1,273 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.config.TaskQueueProperties;
+import com.example.sitecloner.model.CrawlResult;
+import com.example.sitecloner.model.CrawlTask;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务进度推送（SSE）：任务列表页与单个任务订阅后，由一个推送线程按 eventIntervalMillis 统一采样任务进度，
+ * 与上次推送的状态比较，只把有变化的字段（页数、资产数、字节数、当前页面、错误等）合并成一条事件发给订阅者。
+ * 每个间隔只采样一次、每个事件只序列化一次，采样与查库的开销不随观看人数增长；没有订阅者时不采样。
+ *
+ * 订阅后先收到一条 snapshot 事件（全部字段），之后是 progress 事件（只含变化的字段），格式均为
+ * {"tasks":[{"id":...,字段...}],"removed":[不再出现在列表中的任务 ID]}。
+ * 所有发送都在推送线程上进行，同一订阅者的事件不会乱序；发送失败（页面已关闭）的订阅者随即移除。
+ */
+@Service
+public class TaskEventHub {
+
+    // 空闲时每隔多久发一次注释行，及时发现已断开的连接
+    private static final long PING_MILLIS = 15000;
+
+    private final CrawlManager crawlManager;
+    private final TaskQueueProperties queueProps;
+    private final ObjectMapper json = new ObjectMapper();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    // 上次推送时各任务的状态（仅推送线程访问）
+    private Map<String, Map<String, Object>> last = new HashMap<String, Map<String, Object>>();
+    private long lastPing;
+    private ScheduledExecutorService ticker;
+
+    public TaskEventHub(CrawlManager crawlManager, TaskQueueProperties queueProps) {
+        this.crawlManager = crawlManager;
+        this.queueProps = queueProps;
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "task-events");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long interval = Math.max(100, queueProps.getEventIntervalMillis());
+        lastPing = System.currentTimeMillis();
+        ticker.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    tick();
+                } catch (Throwable e) {
+                    System.out.println("[TASK][EVENTS-FAIL] " + e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) ticker.shutdownNow();
+        for (Subscriber s : subscribers) s.emitter.complete();
+        subscribers.clear();
+    }
+
+    /**
+     * 订阅进度推送；taskId 为 null 时订阅所有任务（与任务列表相同的范围）。
+     */
+    public SseEmitter subscribe(final String taskId) {
+        final Subscriber s = new Subscriber(taskId, new SseEmitter(0L));
+        Runnable remove = new Runnable() {
+            public void run() {
+                subscribers.remove(s);
+            }
+        };
+        s.emitter.onCompletion(remove);
+        s.emitter.onTimeout(remove);
+        ticker.execute(new Runnable() {
+            public void run() {
+                try {
+                    // 补充采样新订阅范围内尚未跟踪的任务；已跟踪的沿用上次推送的状态，变化在下次推送中一并发给所有人
+                    if (subscribers.isEmpty()) last.clear();
+                    if (taskId == null ? !watchingAll() : !last.containsKey(taskId)) {
+                        for (Map.Entry<String, Map<String, Object>> e : collect(Collections.singletonList(s)).entrySet()) {
+                            if (!last.containsKey(e.getKey())) last.put(e.getKey(), e.getValue());
+                        }
+                    }
+                    subscribers.add(s);
+                    List<Map<String, Object>> tasks = new ArrayList<Map<String, Object>>();
+                    for (Map.Entry<String, Map<String, Object>> e : last.entrySet()) {
+                        if (s.wants(e.getKey())) tasks.add(withId(e.getKey(), e.getValue()));
+                    }
+                    send(s, "snapshot", event(tasks, new ArrayList<String>()));
+                } catch (Throwable e) {
+                    System.out.println("[TASK][EVENTS-FAIL] " + e);
+                    s.emitter.complete();
+                }
+            }
+        });
+        System.out.println("[TASK][EVENTS] subscribe " + (taskId == null ? "*" : taskId));
+        return s.emitter;
+    }
+
+    private boolean watchingAll() {
+        for (Subscriber s : subscribers) {
+            if (s.taskId == null) return true;
+        }
+        return false;
+    }
+
+    private void tick() throws Exception {
+        if (subscribers.isEmpty()) {
+            last.clear();
+            return;
+        }
+        Map<String, Map<String, Object>> now = collect(subscribers);
+        // 与上次推送比较，得出每个任务变化的字段
+        Map<String, Map<String, Object>> changed = new LinkedHashMap<String, Map<String, Object>>();
+        for (Map.Entry<String, Map<String, Object>> e : now.entrySet()) {
+            Map<String, Object> before = last.get(e.getKey());
+            Map<String, Object> delta = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Object> f : e.getValue().entrySet()) {
+                if (before == null || !Objects.equals(before.get(f.getKey()), f.getValue())) delta.put(f.getKey(), f.getValue());
+            }
+            if (!delta.isEmpty()) changed.put(e.getKey(), delta);
+        }
+        List<String> removed = new ArrayList<String>();
+        for (String id : last.keySet()) {
+            if (!now.containsKey(id)) removed.add(id);
+        }
+        last = now;
+
+        long nowMillis = System.currentTimeMillis();
+        boolean ping = nowMillis - lastPing >= PING_MILLIS;
+        if (ping) lastPing = nowMillis;
+        if (changed.isEmpty() && removed.isEmpty() && !ping) return;
+
+        // 同一范围的订阅者共用一份序列化结果
+        Map<String, String> payloads = new HashMap<String, String>();
+        for (Subscriber s : subscribers) {
+            String key = s.taskId == null ? "*" : s.taskId;
+            String data = payloads.get(key);
+            if (data == null && !payloads.containsKey(key)) {
+                List<Map<String, Object>> tasks = new ArrayList<Map<String, Object>>();
+                for (Map.Entry<String, Map<String, Object>> e : changed.entrySet()) {
+                    if (s.wants(e.getKey())) tasks.add(withId(e.getKey(), e.getValue()));
+                }
+                List<String> gone = new ArrayList<String>();
+                for (String id : removed) {
+                    if (s.wants(id)) gone.add(id);
+                }
+                data = tasks.isEmpty() && gone.isEmpty() ? null : event(tasks, gone);
+                payloads.put(key, data);
+            }
+            if (data != null) {
+                send(s, "progress", data);
+            } else if (ping) {
+                try {
+                    s.emitter.send(SseEmitter.event().comment("ping"));
+                } catch (Exception e) {
+                    drop(s);
+                }
+            }
+        }
+    }
+
+    // 采样订阅范围内的任务：有订阅全部任务的就取任务列表，单任务订阅只查询各自的任务（同一任务只查一次）
+    private Map<String, Map<String, Object>> collect(Collection<Subscriber> subs) {
+        Map<String, Map<String, Object>> out = new LinkedHashMap<String, Map<String, Object>>();
+        Set<String> single = new LinkedHashSet<String>();
+        boolean all = false;
+        for (Subscriber s : subs) {
+            if (s.taskId == null) all = true;
+            else single.add(s.taskId);
+        }
+        if (all) {
+            for (CrawlTask t : crawlManager.list()) out.put(t.getId(), stateOf(t));
+        }
+        for (String id : single) {
+            if (out.containsKey(id)) continue;
+            CrawlTask t = crawlManager.get(id);
+            if (t != null) out.put(id, stateOf(t));
+        }
+        return out;
+    }
+
+    private static Map<String, Object> stateOf(CrawlTask t) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("status", t.getStatus() == null ? null : t.getStatus().name());
+        m.put("startUrl", t.getRequest() == null ? null : t.getRequest().getStartUrl());
+        m.put("node", t.getNode());
+        m.put("threadName", t.getThreadName());
+        m.put("startTime", t.getStartTime() == null ? null : t.getStartTime().toString());
+        m.put("endTime", t.getEndTime() == null ? null : t.getEndTime().toString());
+        m.put("duration", t.getDuration());
+        m.put("errorMessage", t.getErrorMessage());
+        CrawlResult.Snapshot r = t.getResult();
+        m.put("pages", r == null ? 0 : r.getPagesDownloaded());
+        m.put("assets", r == null ? 0 : r.getAssetsDownloaded());
+        m.put("bytes", r == null ? 0 : r.getBytesDownloaded());
+        m.put("currentUrl", r == null ? null : r.getCurrentUrl());
+        m.put("errors", r == null ? 0 : r.getErrorCount());
+        List<String> recent = r == null ? null : r.getRecentErrors();
+        m.put("lastError", recent == null || recent.isEmpty() ? null : recent.get(recent.size() - 1));
+        return m;
+    }
+
+    private static Map<String, Object> withId(String id, Map<String, Object> fields) {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("id", id);
+        m.putAll(fields);
+        return m;
+    }
+
+    private String event(List<Map<String, Object>> tasks, List<String> removed) throws Exception {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("tasks", tasks);
+        m.put("removed", removed);
+        return json.writeValueAsString(m);
+    }
+
+    private void send(Subscriber s, String name, String data) {
+        try {
+            s.emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            drop(s);
+        }
+    }
+
+    // 连接已断开：移除订阅者
+    private void drop(Subscriber s) {
+        subscribers.remove(s);
+        try {
+            s.emitter.completeWithError(new IllegalStateException("订阅连接已断开"));
+        } catch (Exception ignore) {}
+    }
+
+    private static final class Subscriber {
+        // 订阅的任务，null 表示全部
+        final String taskId;
+        final SseEmitter emitter;
+
+        Subscriber(String taskId, SseEmitter emitter) {
+            this.taskId = taskId;
+            this.emitter = emitter;
+        }
+
+        boolean wants(String id) {
+            return taskId == null || taskId.equals(id);
+        }
+    }
+}
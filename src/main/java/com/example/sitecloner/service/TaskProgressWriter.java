@@ -0,0 +1,158 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlResult;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 运行中任务的进度写回（write-behind）：不在每次状态变化时保存整行，而是由 {@link CrawlManager} 按 progressFlushSeconds
+ * 定期调用 {@link #flush()}，把本实例所有运行中任务的页数、资产数、字节数与错误数合成一次 JDBC 批量更新（只更新这几列，
+ * 没有变化的任务跳过），新产生的错误信息合成一次批量插入写入 crawl_task_error 表。进度与错误在同一事务中写入，
+ * 写入失败时已取出的错误信息留在任务上，下次写回时重试。
+ * 进度更新只在行仍归本实例且处于采集中时生效，任务被接手或取消后不会覆盖。
+ * MySQL 需在连接串中开启 rewriteBatchedStatements，批量语句才会合并为一次往返。
+ */
+class TaskProgressWriter {
+
+    private static final String UPDATE_PROGRESS = "update crawl_task set pages_downloaded = ?, assets_downloaded = ?,"
+            + " bytes_downloaded = ?, error_count = ? where id = ? and node_id = ? and status = ?";
+    private static final String INSERT_ERROR = "insert into crawl_task_error (task_uuid, message, created_at) values (?, ?, ?)";
+    // 单个批次最多插入的错误条数
+    private static final int ERROR_BATCH = 500;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final String nodeId;
+    // 任务 ID -> 跟踪状态
+    private final ConcurrentHashMap<String, Tracked> running = new ConcurrentHashMap<String, Tracked>();
+
+    TaskProgressWriter(JdbcTemplate jdbc, TransactionTemplate tx, String nodeId) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.nodeId = nodeId;
+    }
+
+    synchronized void track(String id, long rowId, CrawlResult result) {
+        Tracked t = new Tracked(id, rowId, result);
+        // 同一任务续采时接过上次尚未写入成功的错误信息
+        Tracked previous = running.put(id, t);
+        if (previous != null) t.pending.addAll(previous.pending);
+    }
+
+    /**
+     * 任务结束：不再跟踪进度，writeErrors 时把尚未写入的错误一并写入（进度由结束时的行更新写回）。
+     * 写入失败只记日志，不影响任务的结束状态；错误信息留待下次写回时重试。
+     */
+    synchronized void untrack(String id, boolean writeErrors) {
+        Tracked t = running.get(id);
+        if (t == null) return;
+        if (!writeErrors) {
+            running.remove(id);
+            return;
+        }
+        t.finished = true;
+        final List<Object[]> errors = new ArrayList<Object[]>();
+        t.drainErrors(errors);
+        if (!errors.isEmpty()) {
+            try {
+                tx.execute(new TransactionCallbackWithoutResult() {
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        insertErrors(errors);
+                    }
+                });
+            } catch (Exception ex) {
+                System.out.println("[TASK][ERRORS-FAIL] id=" + id + ", errors=" + errors.size() + " -> " + ex.getMessage());
+                return;
+            }
+        }
+        running.remove(id, t);
+    }
+
+    // 写回一次：所有任务的进度一个批次、新错误一个批次，同一事务
+    synchronized void flush() {
+        final List<Object[]> progress = new ArrayList<Object[]>();
+        final List<Object[]> errors = new ArrayList<Object[]>();
+        List<Tracked> written = new ArrayList<Tracked>();
+        for (Map.Entry<String, Tracked> e : running.entrySet()) {
+            Tracked t = e.getValue();
+            t.drainErrors(errors);
+            written.add(t);
+            if (t.finished) continue;
+            long pages = t.result.getPagesDownloaded();
+            long assets = t.result.getAssetsDownloaded();
+            long bytes = t.result.getBytesDownloaded();
+            long errorCount = t.result.getErrorCount();
+            if (pages == t.pages && assets == t.assets && bytes == t.bytes && errorCount == t.errors) continue;
+            progress.add(new Object[]{pages, assets, bytes, errorCount, t.rowId, nodeId, CrawlManager.RUNNING});
+            t.pages = pages;
+            t.assets = assets;
+            t.bytes = bytes;
+            t.errors = errorCount;
+        }
+        if (progress.isEmpty() && errors.isEmpty()) return;
+        try {
+            tx.execute(new TransactionCallbackWithoutResult() {
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    if (!progress.isEmpty()) jdbc.batchUpdate(UPDATE_PROGRESS, progress);
+                    insertErrors(errors);
+                }
+            });
+        } catch (Exception ex) {
+            // 整批回滚：下次写回时重新比较进度，错误信息仍留在各任务上重试
+            System.out.println("[TASK][PROGRESS-FAIL] tasks=" + progress.size() + ", errors=" + errors.size() + " -> " + ex.getMessage());
+            for (Tracked t : running.values()) t.pages = -1;
+            return;
+        }
+        for (Tracked t : written) {
+            t.pending.clear();
+            // 结束时没写成的错误已补写，不再跟踪
+            if (t.finished) running.remove(t.id, t);
+        }
+        System.out.println("[TASK][PROGRESS] tasks=" + progress.size() + ", errors=" + errors.size());
+    }
+
+    private void insertErrors(List<Object[]> errors) {
+        for (int from = 0; from < errors.size(); from += ERROR_BATCH) {
+            jdbc.batchUpdate(INSERT_ERROR, errors.subList(from, Math.min(errors.size(), from + ERROR_BATCH)));
+        }
+    }
+
+    private static final class Tracked {
+        final String id;
+        final long rowId;
+        final CrawlResult result;
+        // 上次写回的值（仅在 flush 中访问）
+        long pages = -1;
+        long assets;
+        long bytes;
+        long errors;
+        // 已从结果中取出但尚未写入成功的错误信息；未清空前不再取新的，新错误留在结果自带的有界队列中
+        final List<Object[]> pending = new ArrayList<Object[]>();
+        // 任务已结束，只剩错误信息待写入
+        boolean finished;
+
+        Tracked(String id, long rowId, CrawlResult result) {
+            this.id = id;
+            this.rowId = rowId;
+            this.result = result;
+        }
+
+        // 取出待写入的错误信息，写入成功后由调用方清空 pending
+        void drainErrors(List<Object[]> out) {
+            if (pending.isEmpty()) {
+                Timestamp now = Timestamp.from(Instant.now());
+                for (String message : result.drainUnsavedErrors()) pending.add(new Object[]{id, message, now});
+            }
+            out.addAll(pending);
+        }
+    }
+}
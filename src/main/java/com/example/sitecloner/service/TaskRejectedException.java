@@ -0,0 +1,13 @@
+package com.example.sitecloner.service;
+
+/**
+ * 准入控制拒绝了新任务（排队总数或该租户排队数已达上限），稍后重试。
+ */
+public class TaskRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TaskRejectedException(String message) {
+        super(message);
+    }
+}
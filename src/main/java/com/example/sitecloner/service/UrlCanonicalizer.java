@@ -0,0 +1,150 @@
+package com.example.sitecloner.service;
+
+import com.example.sitecloner.model.CrawlRequest;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * URL 规范化：同一个逻辑资源无论以何种写法出现，都得到同一个 URI，从而只抓取、只保存一次。
+ *
+ * 规则：协议与主机名小写；去掉默认端口（http:80 / https:443）与 #片段；消除 /./ 与 /../；
+ * 空路径补为 /；查询参数去掉跟踪参数（支持 utm_* 形式的前缀通配）后按参数名排序。
+ * 按任务可选：与起始地址同主机的链接统一使用起始地址的协议；路径转小写（仅适用于大小写不敏感的站点）。
+ * 在入队、资产去重与本地路径映射之前统一调用。
+ */
+class UrlCanonicalizer {
+
+    static final String DEFAULT_DROP_PARAMS = "utm_*,spm,_t";
+
+    // 不在采集任务中时使用的默认规则
+    static final UrlCanonicalizer DEFAULT = new UrlCanonicalizer(null, null, DEFAULT_DROP_PARAMS, false);
+
+    private final String startScheme;
+    private final String startHost;
+    private final List<String> dropExact = new ArrayList<>();
+    private final List<String> dropPrefixes = new ArrayList<>();
+    private final boolean lowercasePaths;
+
+    UrlCanonicalizer(String startScheme, String startHost, String dropParams, boolean lowercasePaths) {
+        this.startScheme = startScheme == null ? null : startScheme.toLowerCase(Locale.ROOT);
+        this.startHost = startHost == null ? null : startHost.toLowerCase(Locale.ROOT);
+        this.lowercasePaths = lowercasePaths;
+        if (dropParams != null) {
+            for (String p : dropParams.split(",")) {
+                String name = p.trim().toLowerCase(Locale.ROOT);
+                if (name.isEmpty()) continue;
+                if (name.endsWith("*")) dropPrefixes.add(name.substring(0, name.length() - 1));
+                else dropExact.add(name);
+            }
+        }
+    }
+
+    static UrlCanonicalizer forRequest(URI startUri, CrawlRequest request) {
+        return new UrlCanonicalizer(request.isUnifyScheme() ? startUri.getScheme() : null, startUri.getHost(),
+                request.getDropQueryParams(), request.isLowercasePaths());
+    }
+
+    // 规范化失败（非 http(s) 或无法重建）时原样返回
+    URI canonicalize(URI uri) {
+        if (uri == null) return null;
+        String scheme = uri.getScheme();
+        if (scheme == null) return uri;
+        scheme = scheme.toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) return uri;
+        String host = uri.getHost();
+        if (host == null) return uri;
+        host = host.toLowerCase(Locale.ROOT);
+
+        // 先按原协议去掉默认端口，再统一协议
+        int port = uri.getPort();
+        if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) port = -1;
+        if (startScheme != null && host.equals(startHost)) scheme = startScheme;
+
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) path = "/";
+        path = removeDotSegments(path);
+        if (lowercasePaths) path = path.toLowerCase(Locale.ROOT);
+
+        String query = canonicalQuery(uri.getRawQuery());
+        StringBuilder sb = new StringBuilder();
+        sb.append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) sb.append(uri.getRawUserInfo()).append('@');
+        sb.append(host);
+        if (port >= 0) sb.append(':').append(port);
+        sb.append(path);
+        if (query != null) sb.append('?').append(query);
+        try {
+            return new URI(sb.toString());
+        } catch (URISyntaxException e) {
+            return uri;
+        }
+    }
+
+    String key(URI uri) {
+        return canonicalize(uri).toString();
+    }
+
+    // 字符串形式的 URL：能解析则规范化，否则原样作为键
+    String key(String url) {
+        if (url == null) return null;
+        try {
+            return key(new URI(url));
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return null;
+        List<String> kept = new ArrayList<>();
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = (eq >= 0 ? pair.substring(0, eq) : pair).toLowerCase(Locale.ROOT);
+            if (isDropped(name)) continue;
+            kept.add(pair);
+        }
+        if (kept.isEmpty()) return null;
+        // 稳定排序：同名参数保持原有先后
+        Collections.sort(kept, (a, b) -> paramName(a).compareTo(paramName(b)));
+        return String.join("&", kept);
+    }
+
+    private static String paramName(String pair) {
+        int eq = pair.indexOf('=');
+        return eq >= 0 ? pair.substring(0, eq) : pair;
+    }
+
+    private boolean isDropped(String name) {
+        if (dropExact.contains(name)) return true;
+        for (String prefix : dropPrefixes) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // RFC 3986 5.2.4：逐段处理 . 与 ..，越过根目录的 .. 直接丢弃
+    private static String removeDotSegments(String path) {
+        if (!path.contains("/.")) return path;
+        String[] segments = path.split("/", -1);
+        List<String> out = new ArrayList<>();
+        for (int i = 1; i < segments.length; i++) {
+            String s = segments[i];
+            boolean last = i == segments.length - 1;
+            if (s.equals(".")) {
+                if (last) out.add("");
+            } else if (s.equals("..")) {
+                if (!out.isEmpty()) out.remove(out.size() - 1);
+                if (last) out.add("");
+            } else {
+                out.add(s);
+            }
+        }
+        return "/" + String.join("/", out);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.sitecloner.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个站点输出目录下的校验信息库：URL → ETag / Last-Modified / 本地路径 / SHA-256 / 大小。
+ * 再次采集同一站点时据此发送条件请求，收到 304 即复用本地文件。
+ *
+ * 存放于 &lt;outputDir&gt;/.sitecloner/validators.tsv；页面的出链另存于 links/ 目录，
+ * 以便页面未变化时仍能继续发现链接。页面标题后缀、替换规则等影响输出内容的设置变化后整库作废。
+ */
+class ValidatorStore {
+
+    static final String META_DIR = ".sitecloner";
+    private static final String FILE_NAME = "validators.tsv";
+    private static final String SETTINGS_PREFIX = "#settings\t";
+
+    static final class Entry {
+        final String etag;
+        final String lastModified;
+        final String localPath;
+        final String sha256;
+        final long size;
+
+        Entry(String etag, String lastModified, String localPath, String sha256, long size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.localPath = localPath;
+            this.sha256 = sha256;
+            this.size = size;
+        }
+    }
+
+    private final Path outputDir;
+    private final Path metaDir;
+    private final String settingsKey;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private ValidatorStore(Path outputDir, String settingsKey) {
+        this.outputDir = outputDir;
+        this.metaDir = outputDir.resolve(META_DIR);
+        this.settingsKey = settingsKey;
+    }
+
+    static ValidatorStore load(Path outputDir, String settingsKey) {
+        ValidatorStore store = new ValidatorStore(outputDir, settingsKey);
+        Path file = store.metaDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) return store;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(SETTINGS_PREFIX + settingsKey)) {
+                System.out.println("[VALIDATORS][RESET] settings changed, full refresh: " + file);
+                return store;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length < 6) continue;
+                long size;
+                try { size = Long.parseLong(f[5]); } catch (NumberFormatException e) { continue; }
+                store.entries.put(f[0], new Entry(emptyToNull(f[1]), emptyToNull(f[2]), f[3], emptyToNull(f[4]), size));
+            }
+            System.out.println("[VALIDATORS][LOAD] entries=" + store.entries.size() + ", file=" + file);
+        } catch (IOException e) {
+            System.out.println("[VALIDATORS][LOAD-FAIL] " + file + " -> " + e);
+        }
+        return store;
+    }
+
+    /**
+     * 若已有该 URL 的校验信息且本地文件仍完好，返回条件请求头；否则返回空表。
+     */
+    Map<String, String> conditionalHeaders(String url, Path local) {
+        Entry e = entries.get(url);
+        if (e == null || (e.etag == null && e.lastModified == null)) return Collections.emptyMap();
+        if (!relative(local).equals(e.localPath)) return Collections.emptyMap();
+        try {
+            if (!Files.isRegularFile(local) || Files.size(local) != e.size) return Collections.emptyMap();
+        } catch (IOException ex) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (e.etag != null) headers.put("If-None-Match", e.etag);
+        if (e.lastModified != null) headers.put("If-Modified-Since", e.lastModified);
+        return headers;
+    }
+
+    // 记录一次 200 响应的校验信息；sha256 为空时从本地文件计算
+    void record(String url, String etag, String lastModified, Path local, String sha256) {
+        if (etag == null && lastModified == null) {
+            entries.remove(url);
+            return;
+        }
+        try {
+            long size = Files.size(local);
+            String hash = sha256 != null ? sha256 : sha256Hex(Files.readAllBytes(local));
+            entries.put(url, new Entry(etag, lastModified, relative(local), hash, size));
+        } catch (IOException ignore) {}
+    }
+
+    Entry get(String url) {
+        return entries.get(url);
+    }
+
+    // 先写临时文件再改名，避免写到一半（如线程被中断）留下残缺的出链；失败时返回 false
+    boolean saveLinks(String url, Collection<String> links) {
+        Path file = linksFile(url);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(tmp, String.join("\n", links).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+            return false;
+        }
+    }
+
+    List<String> loadLinks(String url) {
+        try {
+            Path file = linksFile(url);
+            if (!Files.exists(file)) return Collections.emptyList();
+            List<String> links = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) links.add(line.trim());
+            }
+            return links;
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    // 写入临时文件后原子替换，避免中断时留下半截文件
+    synchronized void save() throws IOException {
+        Files.createDirectories(metaDir);
+        Path file = metaDir.resolve(FILE_NAME);
+        Path tmp = metaDir.resolve(FILE_NAME + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write(SETTINGS_PREFIX + settingsKey);
+            w.newLine();
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                Entry e = me.getValue();
+                w.write(clean(me.getKey()) + "\t" + clean(e.etag) + "\t" + clean(e.lastModified) + "\t"
+                        + clean(e.localPath) + "\t" + clean(e.sha256) + "\t" + e.size);
+                w.newLine();
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private Path linksFile(String url) {
+        String h = sha256Hex(url.getBytes(StandardCharsets.UTF_8));
+        return metaDir.resolve("links").resolve(h.substring(0, 2)).resolve(h + ".txt");
+    }
+
+    private String relative(Path local) {
+        return outputDir.relativize(local).toString().replace('\\', '/');
+    }
+
+    private static String clean(String s) {
+        return s == null ? "" : s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+    static String sha256Hex(byte[] data) {
+        MessageDigest md = newSha256();
+        return toHex(md.digest(data));
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}